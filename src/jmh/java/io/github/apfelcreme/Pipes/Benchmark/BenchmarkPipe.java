@@ -0,0 +1,246 @@
+package io.github.apfelcreme.Pipes.Benchmark;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.ServerMock;
+import io.github.apfelcreme.Pipes.Manager.PipeManager;
+import io.github.apfelcreme.Pipes.Pipe.AbstractPipePart;
+import io.github.apfelcreme.Pipes.Pipe.PipeInput;
+import io.github.apfelcreme.Pipes.Pipe.PipeOutput;
+import io.github.apfelcreme.Pipes.Pipe.SimpleLocation;
+import io.github.apfelcreme.Pipes.Pipes;
+import io.github.apfelcreme.Pipes.PipesConfig;
+import io.github.apfelcreme.Pipes.PipesItem;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.Container;
+import org.bukkit.block.data.Directional;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+
+/**
+ * A straight pipe in a MockBukkit world with the Pipes plugin loaded. The glass runs along the x axis,
+ * the input sits in front of its first block and the outputs are spread over the four free sides
+ * of the glass blocks, each of them pointing into its own chest. If there are more outputs than free sides
+ * the pipe gets parallel branches of the same length that are connected behind its last block.
+ */
+public class BenchmarkPipe {
+
+    /**
+     * the material of the items that get moved, it's always the last item in a filter
+     */
+    public static final Material ITEM = Material.STONE;
+
+    /**
+     * the materials that the filters get filled with before the moved item
+     */
+    private static final Material[] FILTER_MATERIALS = {
+            Material.DIRT, Material.COBBLESTONE, Material.SAND, Material.GRAVEL,
+            Material.OAK_LOG, Material.COAL, Material.IRON_INGOT, Material.GOLD_INGOT
+    };
+
+    private static final BlockFace[] OUTPUT_SIDES = {BlockFace.NORTH, BlockFace.SOUTH, BlockFace.UP, BlockFace.DOWN};
+
+    private static final int Y = 64;
+
+    /**
+     * the distance between two branches, leaves room for the outputs and chests on both sides
+     */
+    private static final int BRANCH_SPACING = 6;
+
+    private final World world;
+    private final Block start;
+    private final PipeInput input;
+    private final List<PipeOutput> outputs = new ArrayList<>();
+    private final List<Inventory> targets = new ArrayList<>();
+
+    private BenchmarkPipe(World world, int length, int outputCount, int filterSize) {
+        if (filterSize > FILTER_MATERIALS.length + 1) {
+            throw new IllegalArgumentException("Filters can contain at most " + (FILTER_MATERIALS.length + 1) + " items");
+        }
+        this.world = world;
+
+        int perBranch = length * OUTPUT_SIDES.length;
+        int branches = Math.max((outputCount + perBranch - 1) / perBranch, 1);
+        for (int branch = 0; branch < branches; branch++) {
+            int z = branch * BRANCH_SPACING;
+            for (int x = 0; x < length; x++) {
+                place(x, Y, z, Material.WHITE_STAINED_GLASS);
+            }
+            if (branch > 0) {
+                // connect the branch to the previous one behind the last block
+                for (int connector = z - BRANCH_SPACING; connector <= z; connector++) {
+                    place(length, Y, connector, Material.WHITE_STAINED_GLASS);
+                }
+            }
+        }
+        start = world.getBlockAt(0, Y, 0);
+        input = (PipeInput) createPart(PipesItem.PIPE_INPUT, place(-1, Y, 0, Material.DISPENSER), BlockFace.EAST);
+
+        for (int branch = 0; branch < branches; branch++) {
+            int branchOutputs = Math.min(outputCount - branch * perBranch, perBranch);
+            int rows = (branchOutputs + OUTPUT_SIDES.length - 1) / OUTPUT_SIDES.length;
+            int step = rows > 0 ? length / rows : length;
+            for (int i = 0; i < branchOutputs; i++) {
+                BlockFace side = OUTPUT_SIDES[i % OUTPUT_SIDES.length];
+                addOutput((i / OUTPUT_SIDES.length) * step, branch * BRANCH_SPACING, side, filterSize);
+            }
+        }
+    }
+
+    private void addOutput(int x, int z, BlockFace side, int filterSize) {
+        Block block = place(x + side.getModX(), Y + side.getModY(), z + side.getModZ(), Material.DROPPER);
+        PipeOutput output = (PipeOutput) createPart(PipesItem.PIPE_OUTPUT, block, side);
+        Container holder = output.getHolder();
+        for (int slot = 0; slot < filterSize; slot++) {
+            holder.getInventory().setItem(slot, new ItemStack(slot == filterSize - 1 ? ITEM : FILTER_MATERIALS[slot]));
+        }
+        output.invalidateFilter();
+        outputs.add(output);
+
+        Block target = place(x + side.getModX() * 2, Y + side.getModY() * 2, z + side.getModZ() * 2, Material.CHEST);
+        targets.add(((Container) target.getState(false)).getInventory());
+    }
+
+    /**
+     * Start a mocked server, load the plugin without length and output limits and build a pipe in a new world
+     *
+     * @param length      the number of glass blocks of each branch
+     * @param outputCount the number of outputs, every four per glass block need another branch
+     * @param filterSize  the number of items in the filter of each output, 0 to accept everything
+     * @return the pipe
+     */
+    public static BenchmarkPipe create(int length, int outputCount, int filterSize) {
+        ServerMock server = MockBukkit.mock();
+        Pipes plugin = MockBukkit.load(Pipes.class);
+        plugin.getConfig().set("maxPipeLength", 0);
+        plugin.getConfig().set("maxPipeOutputs", 0);
+        plugin.getConfig().set("transferCount", 0);
+        plugin.getConfig().set("inputToOutputRatio", 0);
+        plugin.getConfig().set("blockedBackoffMax", 0);
+        plugin.saveConfig();
+        PipesConfig.load();
+        World world = server.addSimpleWorld("benchmark");
+        checkServer(world);
+        return new BenchmarkPipe(world, length, outputCount, filterSize);
+    }
+
+    /**
+     * Check that the mocked server supports the Paper methods that the plugin calls on its hot paths,
+     * so that a missing one fails the setup with its name instead of skewing or breaking a measurement
+     *
+     * @param world the world to check with
+     */
+    private static void checkServer(World world) {
+        String method = null;
+        try {
+            method = "Bukkit.getCurrentTick()";
+            Bukkit.getCurrentTick();
+            world.loadChunk(0, 0);
+            Block block = world.getBlockAt(0, Y, -BRANCH_SPACING);
+            block.setType(Material.CHEST);
+            method = "Block.getState(false)";
+            Container container = (Container) block.getState(false);
+            method = "Inventory.getHolder(false)";
+            container.getInventory().getHolder(false);
+            method = "Chunk.getTileEntities(false)";
+            block.getChunk().getTileEntities(false);
+            block.setType(Material.AIR);
+        } catch (UnsupportedOperationException e) {
+            throw new IllegalStateException("The mocked server doesn't support " + method + " which the plugin needs", e);
+        }
+    }
+
+    private Block place(int x, int y, int z, Material type) {
+        world.loadChunk(x >> 4, z >> 4);
+        Block block = world.getBlockAt(x, y, z);
+        block.setType(type);
+        return block;
+    }
+
+    private AbstractPipePart createPart(PipesItem item, Block block, BlockFace facing) {
+        block.setBlockData(block.getType().createBlockData(data -> ((Directional) data).setFacing(facing)));
+        return PipeManager.getInstance().createPipePart(item, block);
+    }
+
+    /**
+     * Fill the input with full stacks of the moved item and empty all targets
+     */
+    public void reset() {
+        Inventory inventory = input.getHolder().getInventory();
+        inventory.clear();
+        for (int slot = 0; slot < inventory.getSize(); slot++) {
+            inventory.setItem(slot, new ItemStack(ITEM, ITEM.getMaxStackSize()));
+        }
+        for (Inventory target : targets) {
+            target.clear();
+        }
+    }
+
+    /**
+     * Stop the mocked server
+     */
+    public void stop() {
+        MockBukkit.unmock();
+    }
+
+    /**
+     * returns the first glass block of the pipe that the input points into
+     *
+     * @return the first glass block
+     */
+    public Block getStart() {
+        return start;
+    }
+
+    /**
+     * returns the input of the pipe
+     *
+     * @return the input
+     */
+    public PipeInput getInput() {
+        return input;
+    }
+
+    /**
+     * returns the location of the input
+     *
+     * @return the location of the input
+     */
+    public SimpleLocation getInputLocation() {
+        return input.getLocation();
+    }
+
+    /**
+     * returns the outputs of the pipe in the order they were placed
+     *
+     * @return the outputs
+     */
+    public List<PipeOutput> getOutputs() {
+        return outputs;
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.apfelcreme.Pipes.Benchmark;
+
+import io.github.apfelcreme.Pipes.Pipe.PipeOutput;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+
+/**
+ * Measures the filter checks of a single output. The moved item is always the last item of the filter
+ * so that filters with more items have to check all of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputFilterBenchmark {
+
+    @Param({"0", "1", "5", "9"})
+    public int filterSize;
+
+    private BenchmarkPipe pipe;
+    private PipeOutput output;
+    private ItemStack item;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pipe = BenchmarkPipe.create(16, 1, filterSize);
+        output = pipe.getOutputs().get(0);
+        item = new ItemStack(BenchmarkPipe.ITEM, 32);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pipe.stop();
+    }
+
+    @Benchmark
+    public PipeOutput.AcceptResult matches() {
+        return output.matches(item);
+    }
+
+    @Benchmark
+    public PipeOutput.AcceptResult accepts() {
+        return output.accepts(pipe.getInput(), item);
+    }
+
+    @Benchmark
+    public boolean matchesFilter() {
+        return output.matchesFilter(item, item);
+    }
+}
@@ -0,0 +1,100 @@
+package io.github.apfelcreme.Pipes.Benchmark;
+
+import io.github.apfelcreme.Pipes.Exception.LocationException;
+import io.github.apfelcreme.Pipes.Manager.ItemMoveScheduler;
+import io.github.apfelcreme.Pipes.Manager.PipeManager;
+import io.github.apfelcreme.Pipes.Pipe.AbstractPipePart.Value;
+import io.github.apfelcreme.Pipes.Pipe.PipeInput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+
+/**
+ * Measures one transfer of a full input with {@link ItemMoveScheduler#execute}, which runs moveItem for
+ * every stack. The pipe is cached before measuring and the input gets refilled and the targets emptied
+ * before every call. Combinations with more than four outputs per glass block get parallel branches,
+ * see {@link BenchmarkPipe}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransferBenchmark {
+
+    public enum Spread {
+        NONE, SPREAD, EQUAL_SPREAD
+    }
+
+    @Param({"16", "64", "256", "1024"})
+    public int pipeLength;
+
+    @Param({"1", "16", "64", "256"})
+    public int outputs;
+
+    @Param({"0", "1", "9"})
+    public int filterSize;
+
+    @Param({"NONE", "SPREAD", "EQUAL_SPREAD"})
+    public Spread spread;
+
+    private BenchmarkPipe pipe;
+
+    @Setup(Level.Trial)
+    public void setUp() throws LocationException {
+        pipe = BenchmarkPipe.create(pipeLength, outputs, filterSize);
+        PipeInput input = pipe.getInput();
+        input.setOption(PipeInput.Options.SPREAD, spread != Spread.NONE ? Value.TRUE : Value.FALSE, false);
+        input.setOption(PipeInput.Options.FORCE_EQUAL_SPREAD, spread == Spread.EQUAL_SPREAD ? Value.TRUE : Value.FALSE, false);
+        if (PipeManager.getInstance().getPipeByInput(pipe.getInputLocation()) == null) {
+            throw new IllegalStateException("The benchmark pipe wasn't found");
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void refill() {
+        pipe.reset();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pipe.stop();
+    }
+
+    @Benchmark
+    public boolean transfer() {
+        return ItemMoveScheduler.getInstance().execute(pipe.getInputLocation());
+    }
+}
@@ -50,6 +50,7 @@ public class DetectCommand implements SubCommand {
             Pipes.getInstance().getServer().getScheduler().runTaskLaterAsynchronously(Pipes.getInstance(), () -> {
                 Detection detection = DetectionManager.getInstance().getDetection(commandSender);
                 if (detection != null) {
+                    detection.finish();
                     List<TickingLocation> result = detection.getResult();
                     if (!result.isEmpty()) {
                         Pipes.sendMessage(commandSender, PipesConfig.getText(commandSender, "info.detect.finished"));
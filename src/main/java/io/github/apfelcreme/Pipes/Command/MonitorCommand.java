@@ -1,6 +1,9 @@
 package io.github.apfelcreme.Pipes.Command;
 
+import io.github.apfelcreme.Pipes.Manager.ChunkTicketManager;
+import io.github.apfelcreme.Pipes.Manager.InvalidPipeCache;
 import io.github.apfelcreme.Pipes.Manager.ItemMoveScheduler;
+import io.github.apfelcreme.Pipes.Manager.PipeIndex;
 import io.github.apfelcreme.Pipes.Manager.PipeManager;
 import io.github.apfelcreme.Pipes.Pipes;
 import io.github.apfelcreme.Pipes.PipesConfig;
@@ -45,9 +48,29 @@ public class MonitorCommand implements SubCommand {
             if (ItemMoveScheduler.getInstance().isActive()) {
                 Pipes.sendMessage(commandSender, PipesConfig.getText(commandSender, "info.monitor.schedulerActive",
                         String.valueOf(ItemMoveScheduler.getInstance().getTransfers().size())));
+                if (ItemMoveScheduler.getInstance().getBlockedCount() > 0) {
+                    Pipes.sendMessage(commandSender, PipesConfig.getText(commandSender, "info.monitor.schedulerBlocked",
+                            String.valueOf(ItemMoveScheduler.getInstance().getBlockedCount())));
+                }
+                if (PipesConfig.getTransferTimeBudget() > 0) {
+                    Pipes.sendMessage(commandSender, PipesConfig.getText(commandSender, "info.monitor.schedulerCarriedOver",
+                            String.valueOf(ItemMoveScheduler.getInstance().getCarriedOver())));
+                }
             } else {
                 Pipes.sendMessage(commandSender, PipesConfig.getText(commandSender, "info.monitor.schedulerNotActive"));
             }
+            if (ItemMoveScheduler.getInstance().getParkedCount() > 0) {
+                Pipes.sendMessage(commandSender, PipesConfig.getText(commandSender, "info.monitor.schedulerParked",
+                        String.valueOf(ItemMoveScheduler.getInstance().getParkedCount())));
+            }
+            if (ChunkTicketManager.getInstance().size() > 0) {
+                Pipes.sendMessage(commandSender, PipesConfig.getText(commandSender, "info.monitor.chunkTickets",
+                        String.valueOf(ChunkTicketManager.getInstance().size())));
+            }
+            Pipes.sendMessage(commandSender, PipesConfig.getText(commandSender, "info.monitor.index",
+                    String.valueOf(PipeIndex.getInstance().size())));
+            Pipes.sendMessage(commandSender, PipesConfig.getText(commandSender, "info.monitor.invalidPipes",
+                    String.valueOf(InvalidPipeCache.getInstance().size())));
             Pipes.sendMessage(commandSender, PipesConfig.getText(commandSender, "info.monitor.version",
                     Pipes.getInstance().getDescription().getVersion()));
         } else {
@@ -1,5 +1,6 @@
 package io.github.apfelcreme.Pipes.Command;
 
+import io.github.apfelcreme.Pipes.Manager.InvalidPipeCache;
 import io.github.apfelcreme.Pipes.Pipes;
 import io.github.apfelcreme.Pipes.PipesConfig;
 import org.bukkit.command.CommandSender;
@@ -34,6 +35,8 @@ public class ReloadCommand implements SubCommand {
     public void execute(CommandSender commandSender, String[] strings) {
         if (commandSender.hasPermission("Pipes.reload")) {
             PipesConfig.load();
+            // the pipe limits might have changed
+            InvalidPipeCache.getInstance().clear();
             Pipes.sendMessage(commandSender, PipesConfig.getText(commandSender, "info.reload.reloaded"));
         } else {
             Pipes.sendMessage(commandSender, PipesConfig.getText(commandSender, "error.noPermission"));
@@ -0,0 +1,88 @@
+package io.github.apfelcreme.Pipes.Command;
+
+import io.github.apfelcreme.Pipes.Manager.MetricsManager;
+import io.github.apfelcreme.Pipes.Pipe.PipeOutput;
+import io.github.apfelcreme.Pipes.Pipes;
+import io.github.apfelcreme.Pipes.PipesConfig;
+import io.github.apfelcreme.Pipes.PipesUtil;
+import org.bukkit.command.CommandSender;
+
+import java.text.DecimalFormat;
+import java.util.List;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+public class StatsCommand implements SubCommand {
+
+    /**
+     * executes the command
+     *
+     * @param commandSender the sender
+     * @param strings       the command args
+     */
+    @Override
+    public void execute(CommandSender commandSender, String[] strings) {
+        if (commandSender.hasPermission("Pipes.stats")) {
+            int count = 10;
+            if (strings.length > 1 && PipesUtil.isNumeric(strings[1])) {
+                count = Math.max(Integer.parseInt(strings[1]), 1);
+            }
+            List<MetricsManager.PipeStats> result = MetricsManager.getInstance().getTopPipes(count);
+            if (result.isEmpty()) {
+                Pipes.sendMessage(commandSender, PipesConfig.getText(commandSender, "info.stats.noElements"));
+                return;
+            }
+            Pipes.sendMessage(commandSender, PipesConfig.getText(commandSender, "info.stats.header",
+                    String.valueOf(MetricsManager.getInstance().getSeconds())));
+            DecimalFormat millis = new DecimalFormat("0.00");
+            int i = 0;
+            for (MetricsManager.PipeStats stats : result) {
+                MetricsManager.Metrics metrics = stats.getMetrics();
+                Pipes.sendMessage(commandSender, PipesConfig.getText(commandSender, "info.stats.element",
+                        String.valueOf(i),
+                        stats.getLocation().getWorldName(),
+                        String.valueOf(stats.getLocation().getX()),
+                        String.valueOf(stats.getLocation().getY()),
+                        String.valueOf(stats.getLocation().getZ()),
+                        millis.format(metrics.getNanos() / 1000000.0),
+                        String.valueOf(metrics.getExecutions()),
+                        String.valueOf(stats.getInputs()),
+                        String.valueOf(metrics.getItems()),
+                        String.valueOf(metrics.getStacks()),
+                        String.valueOf(metrics.getEvents()),
+                        String.valueOf(metrics.getSkips())));
+                if (metrics.getFailures() > 0) {
+                    StringBuilder failures = new StringBuilder();
+                    for (PipeOutput.ResultType type : PipeOutput.ResultType.values()) {
+                        if (metrics.getFailures(type) > 0) {
+                            if (failures.length() > 0) {
+                                failures.append(", ");
+                            }
+                            failures.append(type.name().toLowerCase()).append(": ").append(metrics.getFailures(type));
+                        }
+                    }
+                    Pipes.sendMessage(commandSender, PipesConfig.getText(commandSender, "info.stats.failures", failures.toString()));
+                }
+                i++;
+            }
+        } else {
+            Pipes.sendMessage(commandSender, PipesConfig.getText(commandSender, "error.noPermission"));
+        }
+    }
+}
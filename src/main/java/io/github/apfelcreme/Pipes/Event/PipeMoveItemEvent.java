@@ -23,6 +23,14 @@ import org.bukkit.event.inventory.InventoryMoveItemEvent;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
 
+/**
+ * Called before a pipe moves an item into the inventory of an output's target.
+ * <p>
+ * Moves into plain storage inventories (chests, barrels, droppers, hoppers, ...) are buffered and only
+ * written to the destination once the whole transfer of the input is done. The destination inventory
+ * might therefore not contain the items of earlier moves of the same transfer yet, and changes that
+ * listeners make to its contents get overwritten when the buffer is written. Cancel the event instead.
+ */
 public class PipeMoveItemEvent extends InventoryMoveItemEvent {
     private final Pipe pipe;
     private final PipeOutput output;
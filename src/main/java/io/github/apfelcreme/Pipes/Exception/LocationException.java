@@ -24,6 +24,8 @@ public class LocationException extends Exception {
     private SimpleLocation accessedLocation;
 
     public LocationException(SimpleLocation accessedLocation) {
+        // these are thrown for invalid pipes all the time and get cached, no need for a stack trace
+        super(null, null, false, false);
         this.accessedLocation = accessedLocation;
     }
 
@@ -0,0 +1,89 @@
+package io.github.apfelcreme.Pipes.Jfr;
+
+import io.github.apfelcreme.Pipes.Pipe.PipeOutput;
+import io.github.apfelcreme.Pipes.PipesConfig;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+@Name("io.github.apfelcreme.Pipes.OutputAccept")
+@Label("Pipe Output Accept")
+@Category("Pipes")
+@Description("A check whether or not an output accepts an item")
+@StackTrace(false)
+public class OutputAcceptEvent extends Event {
+
+    @Label("World")
+    private String world;
+
+    @Label("X")
+    private int x;
+
+    @Label("Y")
+    private int y;
+
+    @Label("Z")
+    private int z;
+
+    @Label("Result")
+    private String result;
+
+    @Label("In Filter")
+    @Description("Whether or not the item matched a filter item of the output")
+    private boolean inFilter;
+
+    /**
+     * Start the event for a check if events are enabled in the config and a recording wants them
+     *
+     * @param output the output that is checked
+     * @return the started event or <code>null</code> if it shouldn't be recorded
+     */
+    public static OutputAcceptEvent start(PipeOutput output) {
+        if (!PipesConfig.isJfrEvents()) {
+            return null;
+        }
+        OutputAcceptEvent event = new OutputAcceptEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.world = output.getLocation().getWorldName();
+        event.x = output.getLocation().getX();
+        event.y = output.getLocation().getY();
+        event.z = output.getLocation().getZ();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * End and commit the event
+     *
+     * @param result the result of the check
+     */
+    public void finish(PipeOutput.AcceptResult result) {
+        end();
+        this.result = result.getType().name();
+        this.inFilter = result.isInFilter();
+        commit();
+    }
+}
@@ -0,0 +1,89 @@
+package io.github.apfelcreme.Pipes.Jfr;
+
+import io.github.apfelcreme.Pipes.Pipe.SimpleLocation;
+import io.github.apfelcreme.Pipes.PipesConfig;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+@Name("io.github.apfelcreme.Pipes.PipeSearch")
+@Label("Pipe Search")
+@Category("Pipes")
+@Description("A search for the blocks and parts of a pipe")
+@StackTrace(false)
+public class PipeSearchEvent extends Event {
+
+    @Label("World")
+    private String world;
+
+    @Label("X")
+    private int x;
+
+    @Label("Y")
+    private int y;
+
+    @Label("Z")
+    private int z;
+
+    @Label("Blocks Visited")
+    private int blocksVisited;
+
+    @Label("Result")
+    private String result;
+
+    /**
+     * Start the event for a search if events are enabled in the config and a recording wants them
+     *
+     * @param start the location the search starts at
+     * @return the started event or <code>null</code> if it shouldn't be recorded
+     */
+    public static PipeSearchEvent start(SimpleLocation start) {
+        if (!PipesConfig.isJfrEvents()) {
+            return null;
+        }
+        PipeSearchEvent event = new PipeSearchEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.world = start.getWorldName();
+        event.x = start.getX();
+        event.y = start.getY();
+        event.z = start.getZ();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * End and commit the event
+     *
+     * @param blocksVisited the number of blocks that were checked
+     * @param result        how the search ended
+     */
+    public void finish(int blocksVisited, String result) {
+        end();
+        this.blocksVisited = blocksVisited;
+        this.result = result;
+        commit();
+    }
+}
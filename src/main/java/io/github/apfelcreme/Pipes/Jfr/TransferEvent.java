@@ -0,0 +1,125 @@
+package io.github.apfelcreme.Pipes.Jfr;
+
+import io.github.apfelcreme.Pipes.Pipe.SimpleLocation;
+import io.github.apfelcreme.Pipes.PipesConfig;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+@Name("io.github.apfelcreme.Pipes.Transfer")
+@Label("Pipe Transfer")
+@Category("Pipes")
+@Description("A run of a pipe input that tries to move its items")
+@StackTrace(false)
+public class TransferEvent extends Event {
+
+    @Label("World")
+    private String world;
+
+    @Label("X")
+    private int x;
+
+    @Label("Y")
+    private int y;
+
+    @Label("Z")
+    private int z;
+
+    @Label("Pipe Id")
+    @Description("Identity of the cached pipe, the same for all inputs of a pipe while it is cached")
+    private int pipeId;
+
+    @Label("Items Moved")
+    private int items;
+
+    @Label("Stacks Moved")
+    private int stacks;
+
+    @Label("Outputs Tried")
+    private int outputsTried;
+
+    @Label("Skipped")
+    @Description("Whether or not the transfer stopped before moving items, e.g. because of the transfer limits")
+    private boolean skipped;
+
+    @Label("Completed")
+    @Description("Whether or not the transfer was removed from the queue")
+    private boolean completed;
+
+    /**
+     * Start the event for a transfer if events are enabled in the config and a recording wants them
+     *
+     * @param input the location of the input
+     * @return the started event or <code>null</code> if it shouldn't be recorded
+     */
+    public static TransferEvent start(SimpleLocation input) {
+        if (!PipesConfig.isJfrEvents()) {
+            return null;
+        }
+        TransferEvent event = new TransferEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.world = input.getWorldName();
+        event.x = input.getX();
+        event.y = input.getY();
+        event.z = input.getZ();
+        event.begin();
+        return event;
+    }
+
+    public void setPipeId(int pipeId) {
+        this.pipeId = pipeId;
+    }
+
+    /**
+     * Count a stack that items were moved from
+     *
+     * @param items the number of items that were moved
+     */
+    public void addStack(int items) {
+        stacks++;
+        this.items += items;
+    }
+
+    /**
+     * Count an output that was checked for an item
+     */
+    public void addOutputTried() {
+        outputsTried++;
+    }
+
+    /**
+     * End and commit the event
+     *
+     * @param completed whether or not the transfer was removed from the queue
+     * @param skipped   whether or not the transfer stopped before moving items
+     */
+    public void finish(boolean completed, boolean skipped) {
+        end();
+        this.completed = completed;
+        this.skipped = skipped;
+        commit();
+    }
+}
@@ -7,12 +7,16 @@ import io.github.apfelcreme.Pipes.Exception.ChunkNotLoadedException;
 import io.github.apfelcreme.Pipes.Exception.LocationException;
 import io.github.apfelcreme.Pipes.Exception.PipeTooLongException;
 import io.github.apfelcreme.Pipes.Exception.TooManyOutputsException;
+import io.github.apfelcreme.Pipes.Manager.InvalidPipeCache;
+import io.github.apfelcreme.Pipes.Manager.PartIndex;
+import io.github.apfelcreme.Pipes.Manager.PipeIndex;
 import io.github.apfelcreme.Pipes.Manager.PipeManager;
 import io.github.apfelcreme.Pipes.Pipe.AbstractPipePart;
 import io.github.apfelcreme.Pipes.Pipe.ChunkLoader;
 import io.github.apfelcreme.Pipes.Pipe.Pipe;
 import io.github.apfelcreme.Pipes.Pipe.PipeInput;
 import io.github.apfelcreme.Pipes.Pipe.PipeOutput;
+import io.github.apfelcreme.Pipes.Pipe.SimpleLocation;
 import io.github.apfelcreme.Pipes.Pipes;
 import io.github.apfelcreme.Pipes.PipesConfig;
 import io.github.apfelcreme.Pipes.PipesItem;
@@ -42,9 +46,11 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /*
@@ -75,15 +81,17 @@ public class BlockListener implements Listener {
 
     @EventHandler(ignoreCancelled = true)
     public void onItemDispense(BlockDispenseEvent event) {
-        if (!(event instanceof PipeDispenseEvent) && PipesUtil.getPipesItem(event.getBlock()) != null) {
+        if (!(event instanceof PipeDispenseEvent) && PartIndex.getInstance().mightBePart(event.getBlock())
+                && PipesUtil.getPipesItem(event.getBlock()) != null) {
             event.setCancelled(true);
         }
     }
 
     @EventHandler(ignoreCancelled = true)
     public void onItemMove(InventoryMoveItemEvent event) {
-        if (event.getDestination().getType() != InventoryType.HOPPER // hoppers are allowed to remove items from the output
-                && event.getSource().getType() != InventoryType.HOPPER) {
+        if (event.getSource().getType() == InventoryType.DROPPER
+                && event.getDestination().getType() != InventoryType.HOPPER // hoppers are allowed to remove items from the output
+                && PartIndex.getInstance().mightBePart(event.getSource().getLocation())) {
             InventoryHolder holder = event.getSource().getHolder(false);
             if (holder instanceof BlockState && PipesItem.PIPE_OUTPUT.check((BlockState) holder)) {
                 event.setCancelled(true);
@@ -93,7 +101,10 @@ public class BlockListener implements Listener {
 
     @EventHandler(ignoreCancelled = true, priority = EventPriority.HIGHEST)
     public void onBlockBreak(BlockBreakEvent event) {
-        AbstractPipePart pipePart = PipeManager.getInstance().getPipePart(event.getBlock());
+        SimpleLocation location = new SimpleLocation(event.getBlock().getLocation());
+        PipeIndex.getInstance().invalidate(location);
+        InvalidPipeCache.getInstance().invalidate(location);
+        AbstractPipePart pipePart = PartIndex.getInstance().mightBePart(event.getBlock()) ? PipeManager.getInstance().getPipePart(event.getBlock()) : null;
         if (pipePart != null) {
             if (new PipeBlockBreakEvent(event.getBlock(), event.getPlayer(), pipePart).callEvent()) {
                 Set<Pipe> pipes = PipeManager.getInstance().getPipesSafe(event.getBlock(), true);
@@ -109,7 +120,7 @@ public class BlockListener implements Listener {
             Set<Pipe> pipes = PipeManager.getInstance().getPipesSafe(event.getBlock(), true);
             if (!pipes.isEmpty()) {
                 for (Pipe pipe : new ArrayList<>(pipes)) {
-                    PipeManager.getInstance().removePipe(pipe);
+                    PipeManager.getInstance().removeBlocks(pipe, Collections.singleton(location));
                 }
             }
         }
@@ -117,6 +128,9 @@ public class BlockListener implements Listener {
 
     @EventHandler(ignoreCancelled = true)
     public void onBlockBreakDrop(BlockDropItemEvent event) {
+        if (!PartIndex.getInstance().mightBePart(event.getBlock())) {
+            return;
+        }
         AbstractPipePart pipePart = PipeManager.getInstance().getPipePart(event.getBlockState());
         if (pipePart != null) {
             for (Item item : event.getItems()) {
@@ -125,11 +139,17 @@ public class BlockListener implements Listener {
                     break;
                 }
             }
+            // the part is gone now, the drops were the last thing that needed it
+            PartIndex.getInstance().remove(pipePart.getLocation());
+            PipeManager.getInstance().removePipePart(pipePart.getLocation());
         }
     }
 
     @EventHandler(ignoreCancelled = true)
     public void onBlockPlace(BlockPlaceEvent event) {
+        SimpleLocation location = new SimpleLocation(event.getBlock().getLocation());
+        PipeIndex.getInstance().invalidate(location);
+        InvalidPipeCache.getInstance().invalidate(location);
         try {
             PipesItem pipesItem = PipesUtil.getPipesItem(event.getItemInHand());
             if (pipesItem != null) {
@@ -174,49 +194,10 @@ public class BlockListener implements Listener {
                     pipe.highlight();
                 }
             } else if (MaterialTags.STAINED_GLASS.isTagged(event.getBlock())) {
-                Material placedType = event.getBlock().getType();
-
-                Set<Pipe> found = new HashSet<>();
-                for (BlockFace face : PipesUtil.BLOCK_FACES) {
-                    Block block = event.getBlock().getRelative(face);
-                    boolean isPotentialPipe = block.getType() == placedType;
-
-                    if (!isPotentialPipe) {
-                        AbstractPipePart potentialPart = PipeManager.getInstance().getPipePart(event.getBlock());
-                        if (potentialPart != null) {
-                            if (potentialPart instanceof PipeInput) {
-                                isPotentialPipe = (((PipeInput) potentialPart).getFacing().getOppositeFace() == face);
-                            } else if (potentialPart instanceof PipeOutput) {
-                                isPotentialPipe = (((PipeOutput) potentialPart).getFacing().getOppositeFace() != face);
-                            } else {
-                                isPotentialPipe = true;
-                            }
-                        }
-                    }
-
-                    if (isPotentialPipe) {
-                        Set<Pipe> pipes = PipeManager.getInstance().getPipesSafe(block, true);
-                        if (!pipes.isEmpty()) {
-                            Pipe pipe = pipes.iterator().next();
-                            if (pipe.getType() == placedType) {
-                                found.add(pipe);
-                            }
-                        }
-                    }
-                }
-
-                if (found.size() == 1) {
-                    PipeManager.getInstance().addBlock(found.iterator().next(), event.getBlock());
-                } else if (found.size() > 1) {
-                    PipeManager.getInstance().mergePipes(found);
-                } else {
-                    try {
-                        for (Pipe pipe : PipeManager.getInstance().getPipes(event.getBlock())) {
-                            Pipes.sendMessage(event.getPlayer(), PipesConfig.getText(event.getPlayer(), "info.pipe.pipeBuilt",
-                                    pipe.getString(event.getPlayer())));
-                            pipe.highlight();
-                        }
-                    } catch (LocationException ignored) {}
+                for (Pipe pipe : connectGlass(event.getBlock())) {
+                    Pipes.sendMessage(event.getPlayer(), PipesConfig.getText(event.getPlayer(), "info.pipe.pipeBuilt",
+                            pipe.getString(event.getPlayer())));
+                    pipe.highlight();
                 }
             }
         } catch (ChunkNotLoadedException e) {
@@ -244,33 +225,113 @@ public class BlockListener implements Listener {
         if (!PipesConfig.isPistonCheckEnabled()) {
             return;
         }
-        
-        Set<Block> update = new LinkedHashSet<>();
-        for (Block moved : blocks) {
-            if (MaterialTags.STAINED_GLASS.isTagged(moved)) {
-                update.add(moved);
-                for (BlockFace face : PipesUtil.BLOCK_FACES) {
-                    Block u = moved.getRelative(face);
-                    if (!update.contains(u) && MaterialTags.STAINED_GLASS.isTagged(u) || PipeManager.getInstance().getPipePart(u) != null) {
-                        update.add(u);
+
+        Map<Pipe, Set<SimpleLocation>> moved = new LinkedHashMap<>();
+        Set<SimpleLocation> targets = new LinkedHashSet<>();
+        for (Block block : blocks) {
+            if (MaterialTags.STAINED_GLASS.isTagged(block)) {
+                SimpleLocation location = new SimpleLocation(block.getLocation());
+                SimpleLocation target = location.getRelative(direction);
+                PipeIndex.getInstance().invalidate(location);
+                InvalidPipeCache.getInstance().invalidate(location);
+                PipeIndex.getInstance().invalidate(target);
+                InvalidPipeCache.getInstance().invalidate(target);
+                targets.add(target);
+                for (Pipe pipe : PipeManager.getInstance().getPipesSafe(block, true)) {
+                    moved.computeIfAbsent(pipe, p -> new LinkedHashSet<>()).add(location);
+                }
+            }
+        }
+        for (Map.Entry<Pipe, Set<SimpleLocation>> entry : moved.entrySet()) {
+            PipeManager.getInstance().removeBlocks(entry.getKey(), entry.getValue());
+        }
+
+        if (!targets.isEmpty()) {
+            // the blocks are only at their new location once the piston finished moving
+            plugin.getServer().getScheduler().runTaskLater(plugin, () -> {
+                for (SimpleLocation target : targets) {
+                    Block block = target.getBlock();
+                    if (block != null && MaterialTags.STAINED_GLASS.isTagged(block)) {
+                        try {
+                            connectGlass(block);
+                        } catch (LocationException ignored) {}
                     }
-                    Block ud = u.getRelative(direction);
-                    if (!update.contains(ud) && MaterialTags.STAINED_GLASS.isTagged(ud) || PipeManager.getInstance().getPipePart(ud) != null) {
-                        update.add(ud);
+                }
+            }, 3);
+        }
+    }
+
+    /**
+     * Connect a newly added glass block to the pipes next to it. It only gets added to the cached pipes
+     * if everything it touches already belongs to them, otherwise it might connect blocks and parts that
+     * no cached pipe contains (e.g. the side of a split pipe that had no inputs) and the pipe gets searched again.
+     *
+     * @param glass the glass block
+     * @return the pipes that had to be searched again, empty if the block only extended cached pipes
+     * @throws ChunkNotLoadedException When the pipe reaches into a chunk that is not loaded
+     * @throws PipeTooLongException When the pipe is too long
+     * @throws TooManyOutputsException when the pipe has too many outputs
+     */
+    private Set<Pipe> connectGlass(Block glass) throws ChunkNotLoadedException, PipeTooLongException, TooManyOutputsException {
+        if (!PipeManager.getInstance().getPipesSafe(glass, true).isEmpty()) {
+            // already found by the search of another moved block
+            return Collections.emptySet();
+        }
+        Material placedType = glass.getType();
+
+        Set<Pipe> found = new LinkedHashSet<>();
+        List<SimpleLocation> attachedParts = new ArrayList<>();
+        boolean search = false;
+        for (BlockFace face : PipesUtil.BLOCK_FACES) {
+            Block block = glass.getRelative(face);
+            boolean connects = block.getType() == placedType;
+
+            if (!connects && PartIndex.getInstance().mightBePart(block)) {
+                AbstractPipePart potentialPart = PipeManager.getInstance().getPipePart(block);
+                if (potentialPart instanceof PipeInput) {
+                    connects = ((PipeInput) potentialPart).getFacing().getOppositeFace() == face;
+                } else if (potentialPart instanceof PipeOutput) {
+                    if (((PipeOutput) potentialPart).getFacing().getOppositeFace() != face) {
+                        attachedParts.add(potentialPart.getLocation());
                     }
+                } else if (potentialPart != null) {
+                    attachedParts.add(potentialPart.getLocation());
                 }
             }
-        }
-        for (Block u : update) {
-            Set<Pipe> pipes = PipeManager.getInstance().getPipesSafe(u, true);
-            if (!pipes.isEmpty()) {
-                for (Pipe pipe : new ArrayList<>(pipes)) {
-                    PipeManager.getInstance().removePipe(pipe);
+
+            if (connects) {
+                Set<Pipe> pipes = PipeManager.getInstance().getPipesSafe(block, true);
+                if (pipes.isEmpty()) {
+                    search = true;
+                }
+                for (Pipe pipe : pipes) {
+                    if (pipe.getType() == placedType) {
+                        found.add(pipe);
+                    } else {
+                        search = true;
+                    }
                 }
             }
         }
+        for (SimpleLocation part : attachedParts) {
+            if (found.stream().noneMatch(p -> p.getOutputs().containsKey(part) || p.getChunkLoaders().containsKey(part))) {
+                search = true;
+            }
+        }
+
+        if (!search && found.size() == 1) {
+            PipeManager.getInstance().addBlock(found.iterator().next(), glass);
+            return Collections.emptySet();
+        } else if (!search && found.size() > 1) {
+            PipeManager.getInstance().mergePipes(found);
+            return Collections.emptySet();
+        }
+        for (Pipe pipe : found) {
+            PipeManager.getInstance().removePipe(pipe);
+        }
+        return PipeManager.getInstance().getPipes(glass);
     }
-    
+
     @EventHandler(ignoreCancelled = true)
     public void onItemCraft(CraftItemEvent event) {
         if (PipesUtil.getPipesItem(event.getCurrentItem()) == PipesItem.CHUNK_LOADER) {
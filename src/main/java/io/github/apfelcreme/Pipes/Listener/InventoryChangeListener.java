@@ -1,19 +1,28 @@
 package io.github.apfelcreme.Pipes.Listener;
 
 import de.themoep.inventorygui.InventoryGui;
+import io.github.apfelcreme.Pipes.Manager.InvalidPipeCache;
+import io.github.apfelcreme.Pipes.Manager.PartIndex;
 import io.github.apfelcreme.Pipes.Manager.PipeManager;
+import io.github.apfelcreme.Pipes.Pipe.AbstractPipePart;
 import io.github.apfelcreme.Pipes.Pipe.Pipe;
 import io.github.apfelcreme.Pipes.Pipe.PipeInput;
+import io.github.apfelcreme.Pipes.Pipe.PipeOutput;
 import io.github.apfelcreme.Pipes.Pipe.SimpleLocation;
 import io.github.apfelcreme.Pipes.Pipes;
 import io.github.apfelcreme.Pipes.Manager.ItemMoveScheduler;
 import io.github.apfelcreme.Pipes.PipesItem;
+import org.bukkit.Location;
 import org.bukkit.block.BlockState;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.inventory.InventoryClickEvent;
 import org.bukkit.event.inventory.InventoryCloseEvent;
+import org.bukkit.event.inventory.InventoryDragEvent;
 import org.bukkit.event.inventory.InventoryMoveItemEvent;
+import org.bukkit.event.inventory.InventoryType;
+import org.bukkit.inventory.DoubleChestInventory;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.InventoryHolder;
 
@@ -47,9 +56,23 @@ public class InventoryChangeListener implements Listener {
 
     @EventHandler(priority = EventPriority.LOWEST, ignoreCancelled = true)
     public void onInventoryItemMove(final InventoryMoveItemEvent event) {
-        if (!handleInventoryAction(event.getDestination(), true)) {
+        // only dispensers can be pipe inputs, this runs for every hopper move so don't look at anything else
+        if (event.getDestination().getType() != InventoryType.DISPENSER) {
+            return;
+        }
+        Location location = event.getDestination().getLocation();
+        if (location == null || location.getWorld() == null || !PartIndex.getInstance().mightBePart(location)) {
+            return;
+        }
+        SimpleLocation dispenserLocation = new SimpleLocation(location);
+        if (PipeManager.getInstance().getCachedPipePart(dispenserLocation) instanceof PipeInput
+                && InvalidPipeCache.getInstance().get(dispenserLocation) != null) {
+            // the last search from this input failed and nothing changed since then
             event.setCancelled(true);
+            return;
         }
+        // the pipe is only resolved once at the end of the tick, no matter how many items get moved in
+        ItemMoveScheduler.getInstance().addAtTickEnd(dispenserLocation);
     }
 
     /**
@@ -59,42 +82,115 @@ public class InventoryChangeListener implements Listener {
      */
     @EventHandler(priority = EventPriority.LOWEST)
     public void onInventoryClose(InventoryCloseEvent event) {
-        handleInventoryAction(event.getInventory(), false);
+        invalidateOutputFilter(event.getInventory());
+        wakeBlockedInputs(event.getInventory());
+        handleInventoryAction(event.getInventory());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onOutputItemMove(InventoryMoveItemEvent event) {
+        // this runs for every hopper move, only droppers that might be parts can be outputs
+        if (event.getSource().getType() == InventoryType.DROPPER) {
+            invalidateMovedOutputFilter(event.getSource());
+        }
+        if (event.getDestination().getType() == InventoryType.DROPPER) {
+            invalidateMovedOutputFilter(event.getDestination());
+        }
+        if (ItemMoveScheduler.getInstance().hasBlocked()) {
+            // something pulled items out of a potential target
+            wakeBlockedInputs(event.getSource());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onInventoryClick(InventoryClickEvent event) {
+        invalidateOutputFilter(event.getInventory());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onInventoryDrag(InventoryDragEvent event) {
+        invalidateOutputFilter(event.getInventory());
+    }
+
+    /**
+     * Invalidate the compiled filter of an output if the inventory belongs to one
+     * @param inventory The inventory that changed
+     */
+    private void invalidateOutputFilter(Inventory inventory) {
+        Location location = null;
+        if (inventory.getType() == InventoryType.DROPPER) {
+            location = inventory.getLocation();
+        } else if (inventory.getType() == InventoryType.CHEST) {
+            InventoryHolder holder = inventory.getHolder(false);
+            if (holder instanceof InventoryGui.Holder && ((InventoryGui.Holder) holder).getGui().getOwner() instanceof BlockState) {
+                location = ((BlockState) ((InventoryGui.Holder) holder).getGui().getOwner()).getLocation();
+            }
+        }
+        if (location != null && location.getWorld() != null) {
+            AbstractPipePart part = PipeManager.getInstance().getCachedPipePart(new SimpleLocation(location));
+            if (part instanceof PipeOutput) {
+                ((PipeOutput) part).invalidateFilter();
+            }
+        }
+    }
+
+    /**
+     * Invalidate the compiled filter of an output whose dropper inventory was changed by a hopper
+     * @param inventory The dropper inventory that changed
+     */
+    private void invalidateMovedOutputFilter(Inventory inventory) {
+        Location location = inventory.getLocation();
+        if (location != null && location.getWorld() != null && PartIndex.getInstance().mightBePart(location)) {
+            AbstractPipePart part = PipeManager.getInstance().getCachedPipePart(new SimpleLocation(location));
+            if (part instanceof PipeOutput) {
+                ((PipeOutput) part).invalidateFilter();
+            }
+        }
+    }
+
+    /**
+     * Wake the inputs that are blocked because this inventory was full
+     * @param inventory The inventory that changed
+     */
+    private void wakeBlockedInputs(Inventory inventory) {
+        if (!ItemMoveScheduler.getInstance().hasBlocked()) {
+            return;
+        }
+        if (inventory instanceof DoubleChestInventory) {
+            wakeBlockedInputs(((DoubleChestInventory) inventory).getLeftSide());
+            wakeBlockedInputs(((DoubleChestInventory) inventory).getRightSide());
+            return;
+        }
+        Location location = inventory.getLocation();
+        if (location != null && location.getWorld() != null) {
+            ItemMoveScheduler.getInstance().wake(new SimpleLocation(location));
+        }
     }
 
     /**
      * Handle an inventory action
      * @param inventory The inventory
-     * @param scheduled Whether or not to add the scheduled task delayed by 2 ticks
-     * @return <code>Wether or not something went wrong</code>
      */
-    private boolean handleInventoryAction(Inventory inventory, boolean scheduled) {
+    private void handleInventoryAction(Inventory inventory) {
         InventoryHolder holder = inventory.getHolder(false);
         if (holder instanceof InventoryGui.Holder) {
             holder = ((InventoryGui.Holder) holder).getGui().getOwner();
         }
         
         if (holder == null || !(holder instanceof BlockState)) {
-            return true;
+            return;
         }
         BlockState dispenser = (BlockState) holder;
-        if (!PipesItem.PIPE_INPUT.check(dispenser)) {
-            return true;
-        }
         SimpleLocation dispenserLocation = new SimpleLocation(dispenser.getLocation());
+        // cached inputs don't need their block data checked
+        if (!(PipeManager.getInstance().getCachedPipePart(dispenserLocation) instanceof PipeInput)
+                && !PipesItem.PIPE_INPUT.check(dispenser)) {
+            return;
+        }
 
         Set<Pipe> pipes = PipeManager.getInstance().getPipesSafe(dispenserLocation);
-        if (pipes.isEmpty()) {
-            return false;
-        }
-        PipeInput pipeInput = pipes.iterator().next().getInput(dispenserLocation);
-        if (pipeInput != null) {
-            if (scheduled) {
-                plugin.getServer().getScheduler().runTaskLater(plugin, () -> ItemMoveScheduler.getInstance().add(dispenserLocation), 2);
-            } else {
-                ItemMoveScheduler.getInstance().add(dispenserLocation);
-            }
+        if (!pipes.isEmpty() && pipes.iterator().next().getInput(dispenserLocation) != null) {
+            ItemMoveScheduler.getInstance().add(dispenserLocation);
         }
-        return true;
     }
 }
@@ -0,0 +1,41 @@
+package io.github.apfelcreme.Pipes.Listener;
+
+import com.destroystokyo.paper.event.server.ServerTickEndEvent;
+import io.github.apfelcreme.Pipes.Manager.ItemMoveScheduler;
+import io.github.apfelcreme.Pipes.Manager.PartSaveQueue;
+import io.github.apfelcreme.Pipes.Pipes;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+public class TickListener implements Listener {
+
+    private final Pipes plugin;
+
+    public TickListener(Pipes plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler
+    public void onTickEnd(ServerTickEndEvent event) {
+        ItemMoveScheduler.getInstance().flushTickEnd();
+        PartSaveQueue.getInstance().flush();
+    }
+}
@@ -0,0 +1,77 @@
+package io.github.apfelcreme.Pipes.Listener;
+
+import io.github.apfelcreme.Pipes.Manager.InvalidPipeCache;
+import io.github.apfelcreme.Pipes.Manager.ItemMoveScheduler;
+import io.github.apfelcreme.Pipes.Manager.PartIndex;
+import io.github.apfelcreme.Pipes.Manager.PartSaveQueue;
+import io.github.apfelcreme.Pipes.Manager.PipeIndex;
+import io.github.apfelcreme.Pipes.Manager.PipeManager;
+import io.github.apfelcreme.Pipes.Pipes;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldSaveEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+public class WorldListener implements Listener {
+
+    private final Pipes plugin;
+
+    public WorldListener(Pipes plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler
+    public void onWorldLoad(WorldLoadEvent event) {
+        PipeIndex.load(event.getWorld());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        PartIndex.getInstance().indexChunk(event.getChunk());
+        PipeManager.getInstance().setChunkLoaded(event.getChunk(), true);
+        InvalidPipeCache.getInstance().invalidateChunk(event.getChunk());
+        ItemMoveScheduler.getInstance().resume(event.getChunk());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        PartSaveQueue.getInstance().flushChunk(event.getChunk());
+        PipeManager.getInstance().setChunkLoaded(event.getChunk(), false);
+        PipeManager.getInstance().unloadParts(event.getChunk());
+        PartIndex.getInstance().unloadChunk(event.getChunk());
+    }
+
+    @EventHandler
+    public void onWorldSave(WorldSaveEvent event) {
+        PipeIndex.save(event.getWorld(), true);
+    }
+
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        PipeIndex.save(event.getWorld(), false);
+        PipeIndex.unload(event.getWorld());
+        PartIndex.getInstance().unload(event.getWorld());
+    }
+}
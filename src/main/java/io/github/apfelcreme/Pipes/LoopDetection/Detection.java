@@ -29,22 +29,38 @@ import java.util.Map;
 public class Detection {
 
     /**
-     * a list of locations that were found
+     * the sketch that counts all transfers
      */
-    private Map<SimpleLocation, TickingLocation> tickingLocations = new HashMap<>();
+    private final TransferSketch sketch;
 
     /**
-     * adds a location to the map of found locations
+     * the counts of the sketch when the detection started
+     */
+    private final Map<SimpleLocation, TransferSketch.Sample> baseline = new HashMap<>();
+
+    /**
+     * the result once the detection finished
+     */
+    private List<TickingLocation> result = null;
+
+    /**
+     * starts a detection, it counts the transfers from now on
      *
-     * @param location a location of a dispenser
+     * @param sketch the sketch that counts all transfers
+     */
+    public Detection(TransferSketch sketch) {
+        this.sketch = sketch;
+        for (TransferSketch.Sample sample : sketch.snapshot()) {
+            baseline.put(sample.getLocation(), sample);
+        }
+    }
+
+    /**
+     * finishes the detection, the result doesn't change anymore afterwards
      */
-    public void addLocation(SimpleLocation location) {
-        TickingLocation tickingLocation = tickingLocations.get(location);
-        if (tickingLocation == null) {
-            //no location found
-            tickingLocations.put(location, new TickingLocation(location, 1));
-        } else {
-            tickingLocation.increment();
+    public synchronized void finish() {
+        if (result == null) {
+            result = calculateResult();
         }
     }
 
@@ -53,9 +69,26 @@ public class Detection {
      *
      * @return the sorted result
      */
-    public List<TickingLocation> getResult() {
-        List<TickingLocation> result = new ArrayList<>(tickingLocations.values());
-        Collections.sort(result);
-        return result;
+    public synchronized List<TickingLocation> getResult() {
+        return result != null ? result : calculateResult();
+    }
+
+    private List<TickingLocation> calculateResult() {
+        List<TickingLocation> tickingLocations = new ArrayList<>();
+        for (TransferSketch.Sample sample : sketch.snapshot()) {
+            TransferSketch.Sample before = baseline.get(sample.getLocation());
+            long transfers;
+            if (before != null && before.getId() == sample.getId()) {
+                transfers = sample.getCount() - before.getCount();
+            } else {
+                // the location was counted after the detection started, only count what is guaranteed
+                transfers = sample.getCount() - sample.getError();
+            }
+            if (transfers > 0) {
+                tickingLocations.add(new TickingLocation(sample.getLocation(), (int) Math.min(transfers, Integer.MAX_VALUE)));
+            }
+        }
+        Collections.sort(tickingLocations);
+        return tickingLocations;
     }
 }
@@ -0,0 +1,223 @@
+package io.github.apfelcreme.Pipes.LoopDetection;
+
+import io.github.apfelcreme.Pipes.Pipe.SimpleLocation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+public class TransferSketch {
+
+    /**
+     * the maximum number of locations that are counted
+     */
+    private final int capacity;
+
+    /**
+     * the counters by their location
+     */
+    private final Map<SimpleLocation, Counter> counters;
+
+    /**
+     * the bucket with the lowest count, the buckets are sorted by their count
+     */
+    private Bucket minBucket = null;
+
+    /**
+     * the id that the next counted location gets
+     */
+    private long nextId = 0;
+
+    /**
+     * Count the most frequent locations with the Space-Saving algorithm.
+     * A location that isn't counted yet replaces the one with the lowest count once the sketch is full.
+     *
+     * @param capacity the maximum number of locations that are counted
+     */
+    public TransferSketch(int capacity) {
+        this.capacity = Math.max(capacity, 1);
+        counters = new HashMap<>();
+    }
+
+    /**
+     * Count a transfer of an input
+     *
+     * @param location the location of the input
+     */
+    public synchronized void add(SimpleLocation location) {
+        Counter counter = counters.get(location);
+        if (counter != null) {
+            increment(counter);
+            return;
+        }
+        if (counters.size() < capacity) {
+            counter = new Counter();
+            counter.location = location;
+            counter.id = nextId++;
+            counters.put(location, counter);
+            if (minBucket == null || minBucket.count != 1) {
+                Bucket bucket = new Bucket(1);
+                bucket.next = minBucket;
+                if (minBucket != null) {
+                    minBucket.prev = bucket;
+                }
+                minBucket = bucket;
+            }
+            minBucket.attach(counter);
+            return;
+        }
+        // replace the location with the lowest count, its count is the maximum error of the new one
+        counter = minBucket.first;
+        counters.remove(counter.location);
+        counter.location = location;
+        counter.id = nextId++;
+        counter.error = minBucket.count;
+        counters.put(location, counter);
+        increment(counter);
+    }
+
+    private void increment(Counter counter) {
+        Bucket bucket = counter.bucket;
+        Bucket next = bucket.next;
+        if (next == null || next.count != bucket.count + 1) {
+            next = new Bucket(bucket.count + 1);
+            next.prev = bucket;
+            next.next = bucket.next;
+            if (bucket.next != null) {
+                bucket.next.prev = next;
+            }
+            bucket.next = next;
+        }
+        bucket.detach(counter);
+        next.attach(counter);
+        if (bucket.first == null) {
+            if (bucket.prev != null) {
+                bucket.prev.next = bucket.next;
+            } else {
+                minBucket = bucket.next;
+            }
+            bucket.next.prev = bucket.prev;
+        }
+    }
+
+    /**
+     * Get a copy of all counters
+     *
+     * @return the current samples
+     */
+    public synchronized List<Sample> snapshot() {
+        List<Sample> samples = new ArrayList<>(counters.size());
+        for (Bucket bucket = minBucket; bucket != null; bucket = bucket.next) {
+            for (Counter counter = bucket.first; counter != null; counter = counter.next) {
+                samples.add(new Sample(counter.location, counter.id, bucket.count, counter.error));
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * The count of a location at the time a snapshot was taken
+     */
+    public static class Sample {
+        private final SimpleLocation location;
+        private final long id;
+        private final long count;
+        private final long error;
+
+        private Sample(SimpleLocation location, long id, long count, long error) {
+            this.location = location;
+            this.id = id;
+            this.count = count;
+            this.error = error;
+        }
+
+        public SimpleLocation getLocation() {
+            return location;
+        }
+
+        /**
+         * returns the id of the counter, it changes when the location was replaced and counted again
+         *
+         * @return the id
+         */
+        public long getId() {
+            return id;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * returns how much the count might be too high because the location replaced another one
+         *
+         * @return the maximum error of the count
+         */
+        public long getError() {
+            return error;
+        }
+    }
+
+    private static class Counter {
+        private SimpleLocation location;
+        private long id;
+        private long error = 0;
+        private Bucket bucket;
+        private Counter prev;
+        private Counter next;
+    }
+
+    private static class Bucket {
+        private final long count;
+        private Counter first = null;
+        private Bucket prev = null;
+        private Bucket next = null;
+
+        private Bucket(long count) {
+            this.count = count;
+        }
+
+        private void attach(Counter counter) {
+            counter.bucket = this;
+            counter.prev = null;
+            counter.next = first;
+            if (first != null) {
+                first.prev = counter;
+            }
+            first = counter;
+        }
+
+        private void detach(Counter counter) {
+            if (counter.prev != null) {
+                counter.prev.next = counter.next;
+            } else {
+                first = counter.next;
+            }
+            if (counter.next != null) {
+                counter.next.prev = counter.prev;
+            }
+            counter.prev = null;
+            counter.next = null;
+            counter.bucket = null;
+        }
+    }
+}
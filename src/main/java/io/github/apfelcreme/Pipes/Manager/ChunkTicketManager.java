@@ -0,0 +1,200 @@
+package io.github.apfelcreme.Pipes.Manager;
+
+import io.github.apfelcreme.Pipes.Pipe.Pipe;
+import io.github.apfelcreme.Pipes.Pipes;
+import io.github.apfelcreme.Pipes.PipesConfig;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+public class ChunkTicketManager {
+
+    /**
+     * the ChunkTicketManager instance
+     */
+    private static ChunkTicketManager instance = null;
+
+    /**
+     * the chunks that we hold a ticket for by world and the tick they were last used in
+     */
+    private final Map<String, Long2IntMap> tickets;
+
+    /**
+     * the chunks that are currently being loaded by world
+     */
+    private final Map<String, LongSet> requested;
+
+    /**
+     * the task id of the task that releases idle tickets
+     */
+    private int taskId;
+
+    /**
+     * constructor
+     */
+    private ChunkTicketManager() {
+        tickets = new HashMap<>();
+        requested = new HashMap<>();
+        taskId = -1;
+    }
+
+    /**
+     * returns the ChunkTicketManager instance
+     *
+     * @return the ChunkTicketManager instance
+     */
+    public static ChunkTicketManager getInstance() {
+        if (instance == null) {
+            instance = new ChunkTicketManager();
+        }
+        return instance;
+    }
+
+    /**
+     * Load a chunk asynchronously and keep it loaded with a plugin chunk ticket until it wasn't used for a while.
+     * Nothing happens if the chunk is already being loaded or has a ticket.
+     *
+     * @param world    the world of the chunk
+     * @param chunkKey the key of the chunk
+     */
+    public void request(World world, long chunkKey) {
+        Long2IntMap worldTickets = tickets.get(world.getName());
+        if (worldTickets != null && worldTickets.containsKey(chunkKey)) {
+            worldTickets.put(chunkKey, Bukkit.getCurrentTick());
+            return;
+        }
+        if (!requested.computeIfAbsent(world.getName(), w -> new LongOpenHashSet()).add(chunkKey)) {
+            return;
+        }
+        world.getChunkAtAsync((int) chunkKey, (int) (chunkKey >> 32), true).whenComplete((chunk, e) -> {
+            LongSet worldRequested = requested.get(world.getName());
+            if (worldRequested != null) {
+                worldRequested.remove(chunkKey);
+                if (worldRequested.isEmpty()) {
+                    requested.remove(world.getName());
+                }
+            }
+            if (chunk != null) {
+                chunk.addPluginChunkTicket(Pipes.getInstance());
+                tickets.computeIfAbsent(world.getName(), w -> new Long2IntOpenHashMap()).put(chunkKey, Bukkit.getCurrentTick());
+                if (taskId == -1) {
+                    taskId = Bukkit.getScheduler().scheduleSyncRepeatingTask(Pipes.getInstance(), this::releaseIdle, 20L, 20L);
+                }
+            }
+        });
+    }
+
+    /**
+     * Load all chunks of a pipe that aren't loaded
+     *
+     * @param pipe the pipe
+     */
+    public void request(Pipe pipe) {
+        World world = Bukkit.getWorld(pipe.getWorldName());
+        if (world == null) {
+            return;
+        }
+        for (long chunkKey : pipe.getChunks()) {
+            if (!world.isChunkLoaded((int) chunkKey, (int) (chunkKey >> 32))) {
+                request(world, chunkKey);
+            }
+        }
+    }
+
+    /**
+     * Mark the chunks of a pipe as used so that their tickets don't time out while the pipe is transferring
+     *
+     * @param pipe the pipe
+     */
+    public void touch(Pipe pipe) {
+        Long2IntMap worldTickets = tickets.get(pipe.getWorldName());
+        if (worldTickets == null) {
+            return;
+        }
+        for (long chunkKey : pipe.getChunks()) {
+            if (worldTickets.containsKey(chunkKey)) {
+                worldTickets.put(chunkKey, Bukkit.getCurrentTick());
+            }
+        }
+    }
+
+    /**
+     * Release the tickets of all chunks that weren't used for longer than the timeout
+     */
+    private void releaseIdle() {
+        int timeout = PipesConfig.getChunkTicketTimeout();
+        for (Iterator<Map.Entry<String, Long2IntMap>> worlds = tickets.entrySet().iterator(); worlds.hasNext();) {
+            Map.Entry<String, Long2IntMap> entry = worlds.next();
+            World world = Bukkit.getWorld(entry.getKey());
+            for (Iterator<Long2IntMap.Entry> it = entry.getValue().long2IntEntrySet().iterator(); it.hasNext();) {
+                Long2IntMap.Entry ticket = it.next();
+                if (world == null || Bukkit.getCurrentTick() - ticket.getIntValue() > timeout) {
+                    if (world != null) {
+                        world.removePluginChunkTicket((int) ticket.getLongKey(), (int) (ticket.getLongKey() >> 32), Pipes.getInstance());
+                    }
+                    it.remove();
+                }
+            }
+            if (entry.getValue().isEmpty()) {
+                worlds.remove();
+            }
+        }
+        if (tickets.isEmpty()) {
+            Bukkit.getScheduler().cancelTask(taskId);
+            taskId = -1;
+        }
+    }
+
+    /**
+     * Get the number of chunks that are kept loaded for pipes
+     *
+     * @return the number of tickets
+     */
+    public int size() {
+        int size = 0;
+        for (Long2IntMap worldTickets : tickets.values()) {
+            size += worldTickets.size();
+        }
+        return size;
+    }
+
+    /**
+     * Release all tickets, used on shutdown
+     */
+    public static void exit() {
+        for (World world : Bukkit.getWorlds()) {
+            world.removePluginChunkTickets(Pipes.getInstance());
+        }
+        getInstance().tickets.clear();
+        getInstance().requested.clear();
+        if (getInstance().taskId != -1) {
+            Bukkit.getScheduler().cancelTask(getInstance().taskId);
+            getInstance().taskId = -1;
+        }
+    }
+}
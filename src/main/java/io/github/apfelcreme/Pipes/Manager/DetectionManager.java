@@ -1,10 +1,13 @@
 package io.github.apfelcreme.Pipes.Manager;
 
 import io.github.apfelcreme.Pipes.LoopDetection.Detection;
+import io.github.apfelcreme.Pipes.LoopDetection.TransferSketch;
+import io.github.apfelcreme.Pipes.Pipe.SimpleLocation;
+import io.github.apfelcreme.Pipes.PipesConfig;
 import org.bukkit.command.CommandSender;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /*
  * Copyright (C) 2016 Lord36 aka Apfelcreme
@@ -36,11 +39,26 @@ public class DetectionManager {
      */
     private Map<CommandSender, Detection> detections;
 
+    /**
+     * counts the transfers of the inputs that transfer the most, always running
+     */
+    private final TransferSketch sketch;
+
     /**
      * constructor
      */
     private DetectionManager() {
-        detections = new HashMap<>();
+        detections = new ConcurrentHashMap<>();
+        sketch = new TransferSketch(PipesConfig.getDetectionSize());
+    }
+
+    /**
+     * counts a transfer of an input
+     *
+     * @param location the location of the input
+     */
+    public void addTransfer(SimpleLocation location) {
+        sketch.add(location);
     }
 
     /**
@@ -49,7 +67,7 @@ public class DetectionManager {
      * @param sender the sender of the command
      */
     public void createDetection(CommandSender sender) {
-        detections.put(sender, new Detection());
+        detections.put(sender, new Detection(sketch));
     }
 
     /**
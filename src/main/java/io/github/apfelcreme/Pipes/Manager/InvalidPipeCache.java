@@ -0,0 +1,216 @@
+package io.github.apfelcreme.Pipes.Manager;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import io.github.apfelcreme.Pipes.Exception.ChunkNotLoadedException;
+import io.github.apfelcreme.Pipes.Exception.LocationException;
+import io.github.apfelcreme.Pipes.Pipe.SimpleLocation;
+import io.github.apfelcreme.Pipes.PipesConfig;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.bukkit.Chunk;
+import org.bukkit.block.Block;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+public class InvalidPipeCache {
+
+    /**
+     * the InvalidPipeCache instance
+     */
+    private static InvalidPipeCache instance = null;
+
+    /**
+     * the failed pipe searches by the location they started at
+     */
+    private final Cache<SimpleLocation, InvalidPipe> invalidPipes;
+
+    /**
+     * the failed pipe searches by world and the chunks that they visited
+     */
+    private final Map<String, Map<Long, Set<InvalidPipe>>> chunkIndex;
+
+    /**
+     * constructor
+     */
+    private InvalidPipeCache() {
+        invalidPipes = CacheBuilder.newBuilder()
+                .maximumSize(PipesConfig.getPipeCacheSize())
+                .expireAfterWrite(PipesConfig.getPipeCacheDuration(), TimeUnit.SECONDS)
+                .removalListener(new InvalidPipeRemovalListener())
+                .build();
+        chunkIndex = new HashMap<>();
+    }
+
+    /**
+     * returns the InvalidPipeCache instance
+     *
+     * @return the InvalidPipeCache instance
+     */
+    public static InvalidPipeCache getInstance() {
+        if (instance == null) {
+            instance = new InvalidPipeCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Get the exception of a failed pipe search that started at a location
+     *
+     * @param location the location the search started at
+     * @return the exception that the search failed with or <code>null</code> if there is none cached
+     */
+    public LocationException get(SimpleLocation location) {
+        InvalidPipe invalidPipe = invalidPipes.getIfPresent(location);
+        return invalidPipe != null ? invalidPipe.exception : null;
+    }
+
+    /**
+     * Remember a failed pipe search until one of the blocks it visited changes
+     *
+     * @param location  the location the search started at
+     * @param visited   the block keys of all blocks that the search visited
+     * @param exception the exception that the search failed with
+     */
+    public void put(SimpleLocation location, LongSet visited, LocationException exception) {
+        InvalidPipe invalidPipe = new InvalidPipe(location, visited, exception);
+        invalidPipes.put(location, invalidPipe);
+        Map<Long, Set<InvalidPipe>> chunks = chunkIndex.computeIfAbsent(location.getWorldName(), w -> new HashMap<>());
+        for (long chunkKey : invalidPipe.chunks) {
+            chunks.computeIfAbsent(chunkKey, k -> new HashSet<>()).add(invalidPipe);
+        }
+    }
+
+    /**
+     * Forget all failed searches that visited a block, the pipe might be valid now
+     *
+     * @param location the location of the block that changed
+     */
+    public void invalidate(SimpleLocation location) {
+        Set<InvalidPipe> invalidPipes = getIndexed(location.getWorldName(), Chunk.getChunkKey(location.getX() >> 4, location.getZ() >> 4));
+        if (invalidPipes != null) {
+            long blockKey = location.getBlockKey();
+            for (InvalidPipe invalidPipe : new ArrayList<>(invalidPipes)) {
+                if (invalidPipe.visited.contains(blockKey)) {
+                    remove(invalidPipe);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget all searches that failed because a chunk wasn't loaded
+     *
+     * @param chunk the chunk that got loaded
+     */
+    public void invalidateChunk(Chunk chunk) {
+        Set<InvalidPipe> invalidPipes = getIndexed(chunk.getWorld().getName(), chunk.getChunkKey());
+        if (invalidPipes != null) {
+            for (InvalidPipe invalidPipe : new ArrayList<>(invalidPipes)) {
+                if (invalidPipe.exception instanceof ChunkNotLoadedException) {
+                    remove(invalidPipe);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget all failed searches, e.g. when the pipe limits changed
+     */
+    public void clear() {
+        invalidPipes.invalidateAll();
+        chunkIndex.clear();
+    }
+
+    /**
+     * Get the number of cached failed searches
+     *
+     * @return the number of failed searches
+     */
+    public long size() {
+        return invalidPipes.size();
+    }
+
+    private Set<InvalidPipe> getIndexed(String worldName, long chunkKey) {
+        Map<Long, Set<InvalidPipe>> chunks = chunkIndex.get(worldName);
+        return chunks != null ? chunks.get(chunkKey) : null;
+    }
+
+    private void remove(InvalidPipe invalidPipe) {
+        // the removal listener cleans up the chunk index
+        invalidPipes.asMap().remove(invalidPipe.location, invalidPipe);
+    }
+
+    private void unindex(InvalidPipe invalidPipe) {
+        Map<Long, Set<InvalidPipe>> chunks = chunkIndex.get(invalidPipe.location.getWorldName());
+        if (chunks == null) {
+            return;
+        }
+        for (long chunkKey : invalidPipe.chunks) {
+            Set<InvalidPipe> invalidPipes = chunks.get(chunkKey);
+            if (invalidPipes != null) {
+                invalidPipes.remove(invalidPipe);
+                if (invalidPipes.isEmpty()) {
+                    chunks.remove(chunkKey);
+                }
+            }
+        }
+        if (chunks.isEmpty()) {
+            chunkIndex.remove(invalidPipe.location.getWorldName());
+        }
+    }
+
+    private class InvalidPipeRemovalListener implements RemovalListener<SimpleLocation, InvalidPipe> {
+        @Override
+        public void onRemoval(RemovalNotification<SimpleLocation, InvalidPipe> notification) {
+            if (notification.getValue() != null) {
+                unindex(notification.getValue());
+            }
+        }
+    }
+
+    private static class InvalidPipe {
+        private final SimpleLocation location;
+        private final LongSet visited;
+        private final LocationException exception;
+        private final Set<Long> chunks = new HashSet<>();
+
+        private InvalidPipe(SimpleLocation location, LongSet visited, LocationException exception) {
+            this.location = location;
+            this.visited = visited;
+            this.exception = exception;
+            for (long blockKey : visited) {
+                chunks.add(Chunk.getChunkKey(Block.getBlockKeyX(blockKey) >> 4, Block.getBlockKeyZ(blockKey) >> 4));
+            }
+            if (exception instanceof ChunkNotLoadedException) {
+                // wait for the chunk that wasn't loaded
+                SimpleLocation accessed = exception.getAccessedLocation();
+                chunks.add(Chunk.getChunkKey(accessed.getX() >> 4, accessed.getZ() >> 4));
+            }
+        }
+    }
+}
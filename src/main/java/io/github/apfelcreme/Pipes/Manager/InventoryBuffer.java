@@ -0,0 +1,131 @@
+package io.github.apfelcreme.Pipes.Manager;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+public class InventoryBuffer {
+
+    private final Inventory inventory;
+
+    /**
+     * copies of the storage contents that the moves are applied to
+     */
+    private final ItemStack[] contents;
+
+    /**
+     * the slots that were changed and need to be written back
+     */
+    private final BitSet dirty;
+
+    private final int maxStackSize;
+
+    public InventoryBuffer(Inventory inventory) {
+        this.inventory = inventory;
+        this.contents = inventory.getStorageContents();
+        for (int i = 0; i < contents.length; i++) {
+            // the contents might be mirrors of the actual items
+            if (contents[i] != null) {
+                contents[i] = contents[i].clone();
+            }
+        }
+        this.dirty = new BitSet(contents.length);
+        this.maxStackSize = inventory.getMaxStackSize();
+    }
+
+    /**
+     * Check whether or not an inventory can be buffered. This is only the case for plain storage
+     * inventories where every slot can hold any item.
+     *
+     * @param inventory the inventory
+     * @return <code>true</code> if it can be buffered; <code>false</code> if not
+     */
+    public static boolean supports(Inventory inventory) {
+        switch (inventory.getType()) {
+            case CHEST:
+            case BARREL:
+            case DISPENSER:
+            case DROPPER:
+            case HOPPER:
+            case SHULKER_BOX:
+                return inventory.getLocation() != null;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Add an item to the buffered contents the same way that {@link Inventory#addItem(ItemStack...)} would.
+     * The amount of the item stack is set to the amount that didn't fit.
+     *
+     * @param itemStack the item stack to add
+     */
+    public void add(ItemStack itemStack) {
+        int amount = itemStack.getAmount();
+        int max = Math.min(itemStack.getMaxStackSize(), maxStackSize);
+
+        // fill up existing stacks first
+        for (int i = 0; i < contents.length && amount > 0; i++) {
+            ItemStack item = contents[i];
+            if (item != null && item.getAmount() < max && item.isSimilar(itemStack)) {
+                int added = Math.min(max - item.getAmount(), amount);
+                item.setAmount(item.getAmount() + added);
+                amount -= added;
+                dirty.set(i);
+            }
+        }
+
+        for (int i = 0; i < contents.length && amount > 0; i++) {
+            if (contents[i] == null || contents[i].getType() == Material.AIR) {
+                ItemStack item = itemStack.clone();
+                item.setAmount(Math.min(max, amount));
+                contents[i] = item;
+                amount -= item.getAmount();
+                dirty.set(i);
+            }
+        }
+
+        itemStack.setAmount(amount);
+    }
+
+    /**
+     * returns the buffered contents including the moves that weren't committed yet
+     *
+     * @return the buffered contents, might contain <code>null</code> for empty slots
+     */
+    public List<ItemStack> getContents() {
+        return Arrays.asList(contents);
+    }
+
+    /**
+     * Write all changed slots to the inventory
+     */
+    public void commit() {
+        for (int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+            inventory.setItem(i, contents[i]);
+        }
+        dirty.clear();
+    }
+}
@@ -6,7 +6,9 @@ import io.github.apfelcreme.Pipes.Event.PipeMoveItemEvent;
 import io.github.apfelcreme.Pipes.Exception.ChunkNotLoadedException;
 import io.github.apfelcreme.Pipes.Exception.PipeTooLongException;
 import io.github.apfelcreme.Pipes.Exception.TooManyOutputsException;
-import io.github.apfelcreme.Pipes.LoopDetection.Detection;
+import io.github.apfelcreme.Pipes.Jfr.TransferEvent;
+import io.github.apfelcreme.Pipes.Pipe.AbstractPipePart;
+import io.github.apfelcreme.Pipes.Pipe.IndexedPipe;
 import io.github.apfelcreme.Pipes.Pipe.Pipe;
 import io.github.apfelcreme.Pipes.Pipe.PipeInput;
 import io.github.apfelcreme.Pipes.Pipe.PipeOutput;
@@ -14,11 +16,15 @@ import io.github.apfelcreme.Pipes.Pipe.SimpleLocation;
 import io.github.apfelcreme.Pipes.Pipes;
 import io.github.apfelcreme.Pipes.PipesConfig;
 import io.github.apfelcreme.Pipes.PipesUtil;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
 import org.bukkit.Effect;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.Tag;
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
 import org.bukkit.block.Container;
@@ -28,14 +34,15 @@ import org.bukkit.entity.Item;
 import org.bukkit.inventory.BrewerInventory;
 import org.bukkit.inventory.FurnaceInventory;
 import org.bukkit.inventory.Inventory;
-import org.bukkit.inventory.InventoryHolder;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.util.Vector;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -65,6 +72,7 @@ import java.util.stream.Collectors;
  */
 public class ItemMoveScheduler {
 
+    private final MCTiming TIMINGS_EXECUTE;
     private final MCTiming TIMINGS_MOVE_FILTER;
     private final MCTiming TIMINGS_MOVE_TRANSFER;
     private final MCTiming TIMINGS_MOVE_FILTER_AMOUNT;
@@ -84,13 +92,78 @@ public class ItemMoveScheduler {
      */
     private Set<SimpleLocation> addItemTransfers;
 
+    /**
+     * the transfers that are due but haven't been run yet
+     */
+    private Set<SimpleLocation> pendingTransfers;
+
+    /**
+     * the next run of every scheduled transfer that isn't pending
+     */
+    private TimingWheel<SimpleLocation> wheel;
+
+    /**
+     * the tick of the scheduler, counts up while the task is running
+     */
+    private long tick;
+
+    /**
+     * the number of transfers that couldn't be run in the last tick and were carried over to the next one
+     */
+    private int carriedOver;
+
+    /**
+     * the inputs that couldn't move anything because their targets were full
+     */
+    private Map<SimpleLocation, BlockedTransfer> blockedTransfers;
+
+    /**
+     * the blocked inputs by the locations of the targets of their outputs
+     */
+    private Map<SimpleLocation, Set<SimpleLocation>> blockedByTarget;
+
+    /**
+     * the inputs that wait for a chunk of their pipe to load and the key of that chunk
+     */
+    private Map<SimpleLocation, Long> parkedTransfers;
+
+    /**
+     * the parked inputs by world and the key of the chunk they wait for
+     */
+    private Map<String, Long2ObjectMap<Set<SimpleLocation>>> parkedByChunk;
+
+    /**
+     * inputs that received items in this tick and get added when the tick ends
+     */
+    private Set<SimpleLocation> tickEndTransfers;
+
+    /**
+     * the journal that the scheduled transfers are written to so that they survive restarts and crashes
+     */
+    private final TransferJournal journal;
+
+    /**
+     * the metrics of the input that is currently executed
+     */
+    private MetricsManager.Metrics currentMetrics;
+
+    /**
+     * the JFR event of the input that is currently executed, <code>null</code> if none is recorded
+     */
+    private TransferEvent currentEvent;
+
+    /**
+     * whether or not the input that is currently executed got to moving its items
+     */
+    private boolean currentMoved;
+
     /**
      * whether or not the scheduler is currently transferring
      */
     private boolean isTransferring;
 
     /**
-     * the number of consecutive runs without any transfers (cancels at 4)
+     * the number of consecutive ticks without any transfers (cancels after three transfer cooldowns)
      */
     private int emptyRuns;
 
@@ -103,8 +176,19 @@ public class ItemMoveScheduler {
         taskId = -1;
         scheduledItemTransfers = new LinkedHashSet<>();
         addItemTransfers = new LinkedHashSet<>();
+        tickEndTransfers = new LinkedHashSet<>();
+        pendingTransfers = new LinkedHashSet<>();
+        wheel = new TimingWheel<>(64);
+        blockedTransfers = new HashMap<>();
+        blockedByTarget = new HashMap<>();
+        parkedTransfers = new HashMap<>();
+        parkedByChunk = new HashMap<>();
+        journal = new TransferJournal(new File(Pipes.getInstance().getDataFolder(), "transfers.journal"));
+        tick = 0;
+        carriedOver = 0;
         emptyRuns = 0;
 
+        TIMINGS_EXECUTE = Pipes.getTiming("execute");
         MCTiming timingsMove = Pipes.getTiming("move");
         TIMINGS_MOVE_FILTER = Pipes.getTiming("## filter", timingsMove);
         TIMINGS_MOVE_TRANSFER = Pipes.getTiming("## transfer", timingsMove);
@@ -127,38 +211,351 @@ public class ItemMoveScheduler {
      * starts a task
      */
     private void create() {
-        taskId = Pipes.getInstance().getServer().getScheduler().scheduleSyncRepeatingTask(Pipes.getInstance(), () -> {
-            if (!scheduledItemTransfers.isEmpty()) {
-                isTransferring = true;
-                scheduledItemTransfers.removeIf(this::execute);
-                isTransferring = false;
-                addQueued();
-            } else {
-                emptyRuns++;
-                if (emptyRuns >= 3) {
-                    kill();
+        taskId = Pipes.getInstance().getServer().getScheduler().scheduleSyncRepeatingTask(Pipes.getInstance(), this::runTicked, 20L, 1L);
+    }
+
+    /**
+     * runs the transfers that are due in this tick until the transfer time budget of this tick is used up.
+     * Transfers that didn't fit into the budget are carried over and run first in the next tick.
+     */
+    private void runTicked() {
+        tick++;
+        if (scheduledItemTransfers.isEmpty()) {
+            emptyRuns++;
+            if (emptyRuns >= 3 * Math.max(PipesConfig.getTransferCooldown(), 1)) {
+                kill();
+            }
+            return;
+        }
+        emptyRuns = 0;
+
+        // transfers that are still pending from the last tick stay in front
+        pendingTransfers.addAll(wheel.poll(tick));
+
+        if (pendingTransfers.isEmpty()) {
+            carriedOver = 0;
+            return;
+        }
+
+        long deadline = PipesConfig.getTransferTimeBudget() > 0 ? System.nanoTime() + PipesConfig.getTransferTimeBudget() : Long.MAX_VALUE;
+        isTransferring = true;
+        for (Iterator<SimpleLocation> it = pendingTransfers.iterator(); it.hasNext();) {
+            SimpleLocation location = it.next();
+            it.remove();
+            if (execute(location)) {
+                removeScheduled(location);
+            } else if (scheduledItemTransfers.contains(location)) {
+                wheel.schedule(location, getNextRun(location));
+            }
+            if (System.nanoTime() >= deadline) {
+                break;
+            }
+        }
+        isTransferring = false;
+        carriedOver = pendingTransfers.size();
+        addQueued();
+    }
+
+    /**
+     * Get the next tick that an input should run in. Inputs with the same speed run in the same tick
+     * unless transfers are staggered, then the location is hashed so that inputs are spread evenly over their interval.
+     *
+     * @param location the location of the input
+     * @return the next tick of the scheduler to run the input in
+     */
+    private long getNextRun(SimpleLocation location) {
+        int interval = getInterval(location);
+        int offset = 0;
+        if (PipesConfig.isStaggerTransfers()) {
+            int hash = location.hashCode();
+            hash ^= hash >>> 16;
+            hash *= 0x45d9f3b;
+            hash ^= hash >>> 16;
+            offset = Math.floorMod(hash, interval);
+        }
+        return tick + 1 + Math.floorMod(offset - tick - 1, interval);
+    }
+
+    /**
+     * Get the number of ticks between two runs of an input depending on its speed option
+     *
+     * @param location the location of the input
+     * @return the number of ticks
+     */
+    private int getInterval(SimpleLocation location) {
+        AbstractPipePart part = PipeManager.getInstance().getCachedPipePart(location);
+        if (part instanceof PipeInput) {
+            return part.getOption(PipeInput.Options.SPEED).getTicks();
+        }
+        return PipeInput.Options.Speed.DEFAULT.getTicks();
+    }
+
+    private void addScheduled(SimpleLocation location) {
+        if (scheduledItemTransfers.add(location)) {
+            wheel.schedule(location, getNextRun(location));
+            journal.markDirty(location);
+        }
+    }
+
+    private void removeScheduled(SimpleLocation location) {
+        if (scheduledItemTransfers.remove(location)) {
+            wheel.cancel(location);
+            journal.markDirty(location);
+        }
+        unblock(location);
+    }
+
+    /**
+     * Check whether or not an input is waiting for its targets to change
+     *
+     * @param location the location of the input
+     * @return <code>true</code> if the input is blocked; <code>false</code> if it should be run
+     */
+    private boolean isBlocked(SimpleLocation location) {
+        if (blockedTransfers.isEmpty()) {
+            return false;
+        }
+        BlockedTransfer blocked = blockedTransfers.get(location);
+        return blocked != null && Bukkit.getCurrentTick() < blocked.wakeTick;
+    }
+
+    /**
+     * Block an input whose targets are full or whose outputs filter out its items. It is skipped until its backoff ran out,
+     * which doubles every time it's still blocked, or until one of its targets or outputs changes.
+     *
+     * @param location the location of the input
+     * @param pipe     the pipe of the input
+     */
+    private void block(SimpleLocation location, Pipe pipe) {
+        if (PipesConfig.getBlockedBackoffMax() <= 0) {
+            return;
+        }
+        BlockedTransfer blocked = blockedTransfers.get(location);
+        if (blocked == null) {
+            Set<SimpleLocation> targets = new HashSet<>();
+            for (PipeOutput output : pipe.getOutputs().values()) {
+                targets.add(output.getTargetLocation());
+                // filter and option changes of the output wake the input too
+                targets.add(output.getLocation());
+            }
+            blocked = new BlockedTransfer(targets, (int) Math.max(PipesConfig.getTransferCooldown(), 1));
+            blockedTransfers.put(location, blocked);
+            for (SimpleLocation target : targets) {
+                blockedByTarget.computeIfAbsent(target, t -> new HashSet<>()).add(location);
+            }
+        } else {
+            blocked.backoff = Math.min(blocked.backoff * 2, PipesConfig.getBlockedBackoffMax());
+        }
+        blocked.wakeTick = Bukkit.getCurrentTick() + blocked.backoff;
+    }
+
+    private void unblock(SimpleLocation location) {
+        if (blockedTransfers.isEmpty()) {
+            return;
+        }
+        BlockedTransfer blocked = blockedTransfers.remove(location);
+        if (blocked != null) {
+            for (SimpleLocation target : blocked.targets) {
+                Set<SimpleLocation> inputs = blockedByTarget.get(target);
+                if (inputs != null) {
+                    inputs.remove(location);
+                    if (inputs.isEmpty()) {
+                        blockedByTarget.remove(target);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Wake all blocked inputs that have an output at or pointing at a location, they run in the next tick
+     * instead of waiting for their next run
+     *
+     * @param target the location of the target whose inventory changed or of the output whose filter changed
+     */
+    public void wake(SimpleLocation target) {
+        Set<SimpleLocation> inputs = blockedByTarget.get(target);
+        if (inputs != null) {
+            for (SimpleLocation input : new ArrayList<>(inputs)) {
+                unblock(input);
+                if (wheel.contains(input)) {
+                    // pending inputs already run in the next tick
+                    wheel.schedule(input, tick + 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Check whether or not there are any blocked inputs
+     *
+     * @return <code>true</code> if inputs are waiting for their targets to change
+     */
+    public boolean hasBlocked() {
+        return !blockedByTarget.isEmpty();
+    }
+
+    /**
+     * Get the number of inputs whose targets are full
+     *
+     * @return the number of blocked inputs
+     */
+    public int getBlockedCount() {
+        return blockedTransfers.size();
+    }
+
+    /**
+     * Park an input until a chunk that its pipe needs gets loaded. Parked inputs are not part of
+     * the scheduled transfers anymore and don't cost anything until that chunk loads.
+     *
+     * @param location  the location of the input
+     * @param worldName the name of the world of the chunk
+     * @param chunkKey  the key of the chunk that is not loaded
+     */
+    private void park(SimpleLocation location, String worldName, long chunkKey) {
+        unpark(location);
+        parkedTransfers.put(location, chunkKey);
+        journal.markDirty(location);
+        parkedByChunk.computeIfAbsent(worldName, w -> new Long2ObjectOpenHashMap<>())
+                .computeIfAbsent(chunkKey, k -> new LinkedHashSet<>()).add(location);
+    }
+
+    private void unpark(SimpleLocation location) {
+        if (parkedTransfers.isEmpty()) {
+            return;
+        }
+        Long chunkKey = parkedTransfers.remove(location);
+        if (chunkKey != null) {
+            journal.markDirty(location);
+            Long2ObjectMap<Set<SimpleLocation>> chunks = parkedByChunk.get(location.getWorldName());
+            Set<SimpleLocation> inputs = chunks.get((long) chunkKey);
+            inputs.remove(location);
+            if (inputs.isEmpty()) {
+                chunks.remove((long) chunkKey);
+                if (chunks.isEmpty()) {
+                    parkedByChunk.remove(location.getWorldName());
                 }
             }
-        }, 20L, PipesConfig.getTransferCooldown());
+        }
+    }
+
+    /**
+     * Resume the inputs that were parked because of a chunk. They get scheduled again if all
+     * chunks of their pipe are loaded, otherwise they are parked on the next chunk that isn't.
+     *
+     * @param chunk the chunk that got loaded
+     */
+    public void resume(Chunk chunk) {
+        Long2ObjectMap<Set<SimpleLocation>> chunks = parkedByChunk.get(chunk.getWorld().getName());
+        if (chunks == null) {
+            return;
+        }
+        Set<SimpleLocation> inputs = chunks.remove(chunk.getChunkKey());
+        if (inputs == null) {
+            return;
+        }
+        if (chunks.isEmpty()) {
+            parkedByChunk.remove(chunk.getWorld().getName());
+        }
+        for (SimpleLocation input : inputs) {
+            parkedTransfers.remove(input);
+            journal.markDirty(input);
+            if (!parkIfUnloaded(chunk.getWorld(), chunk.getChunkKey(), input)) {
+                add(input);
+            }
+        }
+    }
+
+    /**
+     * Park an input if its chunk or one of the indexed chunks of its pipe isn't loaded
+     *
+     * @param world       the world of the input
+     * @param loadedChunk the key of the chunk that is currently loading
+     * @param input       the location of the input
+     * @return <code>true</code> if the input was parked
+     */
+    private boolean parkIfUnloaded(World world, long loadedChunk, SimpleLocation input) {
+        long inputChunk = Chunk.getChunkKey(input.getX() >> 4, input.getZ() >> 4);
+        if (inputChunk != loadedChunk && !world.isChunkLoaded(input.getX() >> 4, input.getZ() >> 4)) {
+            park(input, world.getName(), inputChunk);
+            return true;
+        }
+        IndexedPipe indexedPipe = PipeIndex.getInstance().get(input);
+        if (indexedPipe != null) {
+            for (long chunkKey : indexedPipe.getChunks()) {
+                if (chunkKey != loadedChunk && !world.isChunkLoaded((int) chunkKey, (int) (chunkKey >> 32))) {
+                    park(input, world.getName(), chunkKey);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the number of inputs that wait for a chunk to load
+     *
+     * @return the number of parked inputs
+     */
+    public int getParkedCount() {
+        return parkedTransfers.size();
     }
 
     /**
      * executes the item transfer
      *
      * @param simpleLocation the location of the PipeInput
-     * @return <code>true</code> if this transfer should be considered as completed and removed from the queue
+     * @return <code>true</code> if this transfer should be considered as completed or was parked and should be removed from the queue
      */
     public boolean execute(SimpleLocation simpleLocation) {
+        // polls that don't do anything aren't measured
+        if (isBlocked(simpleLocation)) {
+            // Targets were full and didn't change, no need to check again yet
+            return false;
+        }
         Location location = simpleLocation.getLocation();
-        if (location.getWorld() == null || !location.getWorld().isChunkLoaded(location.getBlockX() >> 4, location.getBlockZ() >> 4)) {
-            // Chunk is not loaded, cannot transfer items
+        if (location.getWorld() == null) {
+            // World is not loaded, cannot transfer items
             return false;
         }
+        if (!location.getWorld().isChunkLoaded(location.getBlockX() >> 4, location.getBlockZ() >> 4)) {
+            // Chunk is not loaded, cannot transfer items until it is
+            park(simpleLocation, simpleLocation.getWorldName(), Chunk.getChunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4));
+            return true;
+        }
+
+        currentMetrics = MetricsManager.getInstance().get(simpleLocation);
+        currentEvent = TransferEvent.start(simpleLocation);
+        currentMoved = false;
+        long start = System.nanoTime();
+        boolean completed = false;
+        try (MCTiming t = TIMINGS_EXECUTE.startTiming()) {
+            completed = executeTransfer(simpleLocation);
+            return completed;
+        } finally {
+            if (currentMoved) {
+                currentMetrics.addExecution(System.nanoTime() - start);
+            } else {
+                // the pipe lookup still took its time
+                currentMetrics.addSkip(System.nanoTime() - start);
+            }
+            if (currentEvent != null) {
+                currentEvent.finish(completed, !currentMoved);
+                currentEvent = null;
+            }
+        }
+    }
 
+    private boolean executeTransfer(SimpleLocation simpleLocation) {
         Pipe pipe;
         try {
             pipe = PipeManager.getInstance().getPipeByInput(simpleLocation);
-        } catch (ChunkNotLoadedException | TooManyOutputsException | PipeTooLongException e) {
+        } catch (ChunkNotLoadedException e) {
+            // Pipe reaches into a chunk that is not loaded, wait for it to load
+            SimpleLocation unloaded = e.getAccessedLocation();
+            park(simpleLocation, unloaded.getWorldName(), Chunk.getChunkKey(unloaded.getX() >> 4, unloaded.getZ() >> 4));
+            return true;
+        } catch (TooManyOutputsException | PipeTooLongException e) {
             // Is input of pipe but pipe is not valid, schedule it for next transfer
             return false;
         }
@@ -167,6 +564,15 @@ public class ItemMoveScheduler {
             return true;
         }
 
+        if (currentEvent != null) {
+            currentEvent.setPipeId(System.identityHashCode(pipe));
+        }
+
+        if (!pipe.getChunkLoaders().isEmpty()) {
+            // keep the chunks that were loaded for this pipe loaded while it's in use
+            ChunkTicketManager.getInstance().touch(pipe);
+        }
+
         if (pipe.getLastTransfer() != Bukkit.getCurrentTick()) {
             // Reset transfer count if no transfer occurred this tick
             pipe.setTransfers(0);
@@ -199,32 +605,55 @@ public class ItemMoveScheduler {
         }
 
         // add the current transfer to all the running detections
-        for (Detection detection : DetectionManager.getInstance().getDetections().values()) {
-            detection.addLocation(new SimpleLocation(input.getLocation()));
-        }
+        DetectionManager.getInstance().addTransfer(simpleLocation);
+        currentMoved = true;
 
+        TransferContext context = new TransferContext(inputInventory.getLocation());
         boolean transferedAnything = false;
         boolean transferredAll = true;
-        boolean spread = input.getOption(PipeInput.Options.SPREAD);
-        boolean spreadFully = input.getOption(PipeInput.Options.FORCE_EQUAL_SPREAD);
-        boolean overflow = input.getOption(PipeInput.Options.OVERFLOW);
+        boolean spread = input.hasFlag(PipeInput.Options.SPREAD);
+        boolean spreadFully = input.hasFlag(PipeInput.Options.FORCE_EQUAL_SPREAD);
+        boolean overflow = input.hasFlag(PipeInput.Options.OVERFLOW);
 
         // loop through all items and try to move them
-        for (ItemStack itemStack : itemQueue) {
-            transferedAnything |= moveItem(input, inputInventory, pipe, itemStack, spread, spreadFully, overflow);
-            transferredAll &= transferedAnything;
+        try {
+            for (ItemStack itemStack : itemQueue) {
+                int amount = itemStack.getAmount();
+                transferedAnything |= moveItem(context, input, inputInventory, pipe, itemStack, spread, spreadFully, overflow);
+                transferredAll &= transferedAnything;
+                if (itemStack.getAmount() != amount) {
+                    context.setChanged();
+                    currentMetrics.addStack(amount - itemStack.getAmount());
+                    if (currentEvent != null) {
+                        currentEvent.addStack(amount - itemStack.getAmount());
+                    }
+                }
+            }
+        } finally {
+            // the items were already removed from the input, always write them to the targets
+            context.commit();
         }
 
-        if (!transferredAll && input.getOption(PipeInput.Options.MERGE)) {
+        if (context.isChanged()) {
+            unblock(simpleLocation);
+        } else if (!itemQueue.isEmpty() && !context.hasTransientDenial()) {
+            // only wait if nothing but full targets or filters stopped the items, both wake the input when they change
+            block(simpleLocation, pipe);
+        }
+
+        if (!transferredAll && input.hasFlag(PipeInput.Options.MERGE)) {
             List<ItemStack> inputContents = Arrays.stream(inputInventory.getContents()).filter(Objects::nonNull).collect(Collectors.toList());
             if (inputContents.size() > 1) {
+                context.setChanged();
                 inputInventory.clear();
                 for (ItemStack item : inputContents) {
                     inputInventory.addItem(item);
                 }
             }
         }
-        inputHolder.update();
+        if (context.isChanged()) {
+            inputHolder.update();
+        }
 
         if (transferedAnything) {
             // Update transfers
@@ -235,14 +664,18 @@ public class ItemMoveScheduler {
         return transferredAll;
     }
 
-    private boolean moveItem(PipeInput input, Inventory inputInventory, Pipe pipe, ItemStack itemStack, boolean spread, boolean forceEqualSpread, boolean overflow) {
+    private boolean moveItem(TransferContext context, PipeInput input, Inventory inputInventory, Pipe pipe, ItemStack itemStack, boolean spread, boolean forceEqualSpread, boolean overflow) {
         Map<PipeOutput, PipeOutput.AcceptResult> outputs = new LinkedHashMap<>();
         int filterCount = 0;
         try (MCTiming t = TIMINGS_MOVE_FILTER.startTiming()) {
-            for (PipeOutput output : pipe.getOutputs().values()) {
-                PipeOutput.AcceptResult acceptResult = output.accepts(input, itemStack);
+            // the routes already have the outputs with matching filters first
+            for (Map.Entry<PipeOutput, PipeOutput.AcceptResult> route : pipe.getRoutes(itemStack).entrySet()) {
+                PipeOutput.AcceptResult acceptResult = context.accepts(input, route.getKey(), route.getValue());
+                if (currentEvent != null) {
+                    currentEvent.addOutputTried();
+                }
                 if (!spread || acceptResult.getType() == PipeOutput.ResultType.ACCEPT) {
-                    outputs.put(output, acceptResult);
+                    outputs.put(route.getKey(), acceptResult);
                     if (acceptResult.isInFilter()) {
                         filterCount++;
                     }
@@ -252,10 +685,6 @@ public class ItemMoveScheduler {
             if (outputs.isEmpty()) {
                 return false;
             }
-
-            outputs = outputs.entrySet().stream()
-                    .sorted((e1, e2) -> e1.getValue().isInFilter() ? e2.getValue().isInFilter() ? 0 : -1 : e2.getValue().isInFilter() ? 1 : 0)
-                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (oldValue, newValue) -> oldValue, LinkedHashMap::new));
         }
 
         // Calculate amount that should be spread over the outputs (when in spread mode)
@@ -283,9 +712,9 @@ public class ItemMoveScheduler {
                 if (output.getTargetLocation().equals(input.getTargetLocation())) {
                     continue;
                 }
-                Block targetBlock = output.getTargetLocation().getBlock();
-                InventoryHolder targetHolder = output.getTargetHolder();
-                Inventory targetInventory = targetHolder != null ? targetHolder.getInventory() : null;
+                TransferContext.OutputAccess access = context.get(output);
+                Block targetBlock = access.getTargetBlock();
+                Inventory targetInventory = access.getTargetInventory();
 
                 PipeOutput.Options.Overflow outputOverflow = output.getOption(PipeOutput.Options.OVERFLOW);
 
@@ -314,11 +743,11 @@ public class ItemMoveScheduler {
                 if (targetInventory != null
                         && acceptResult.getType() == PipeOutput.ResultType.ACCEPT
                         && acceptResult.isInFilter()
-                        && output.getOption(PipeOutput.Options.WHITELIST)
-                        && output.getOption(PipeOutput.Options.TARGET_AMOUNT)) {
+                        && output.hasFlag(PipeOutput.Options.WHITELIST)
+                        && output.hasFlag(PipeOutput.Options.TARGET_AMOUNT)) {
                     int amountInTarget = 0;
                     try (MCTiming t2 = TIMINGS_MOVE_FILTER_AMOUNT.startTiming()) {
-                        for (ItemStack item : targetInventory) {
+                        for (ItemStack item : context.getContents(targetInventory)) {
                             if (output.matchesFilter(acceptResult.getFilterItem(), item)) {
                                 amountInTarget += item.getAmount();
                                 if (amountInTarget > acceptResult.getFilterItem().getAmount()) {
@@ -340,6 +769,7 @@ public class ItemMoveScheduler {
                 int leftOverAmount = transferring == itemStack ? 0 : itemStack.getAmount() - transferring.getAmount();
 
                 if (acceptResult.getType() != PipeOutput.ResultType.ACCEPT) {
+                    currentMetrics.addFailure(acceptResult.getType());
                     // Check overflow in non-spread mode
                     if (!spread && acceptResult.isInFilter() &&
                             (outputOverflow == PipeOutput.Options.Overflow.FALSE || (!overflow && outputOverflow == PipeOutput.Options.Overflow.INPUT))) {
@@ -348,7 +778,7 @@ public class ItemMoveScheduler {
                     continue;
                 }
 
-                if (output.getOption(PipeOutput.Options.DROP)) {
+                if (output.hasFlag(PipeOutput.Options.DROP)) {
                     Location dropLocation = output.getTargetLocation().getLocation().add(0.5, 0.5, 0.5);
 
                     double speed = PipesUtil.RANDOM.nextDouble() * 0.1d + 0.2d;
@@ -360,7 +790,9 @@ public class ItemMoveScheduler {
 
                     PipeDispenseEvent pipeDispenseEvent = new PipeDispenseEvent(pipe, output, transferring, motion);
                     Pipes.getInstance().getServer().getPluginManager().callEvent(pipeDispenseEvent);
+                    currentMetrics.addEvent();
                     if (pipeDispenseEvent.isCancelled()) {
+                        context.setTransientDenial();
                         continue;
                     }
 
@@ -376,11 +808,13 @@ public class ItemMoveScheduler {
                     // call move event before doing any moving to check if it was cancelled
                     PipeMoveItemEvent pipeMoveEvent = new PipeMoveItemEvent(pipe, output, inputInventory, transferring, targetInventory);
                     Pipes.getInstance().getServer().getPluginManager().callEvent(pipeMoveEvent);
+                    currentMetrics.addEvent();
                     if (pipeMoveEvent.isCancelled()) {
+                        context.setTransientDenial();
                         continue;
                     }
 
-                    boolean smartInsert = output.getOption(PipeOutput.Options.SMART_INSERT);
+                    boolean smartInsert = output.hasFlag(PipeOutput.Options.SMART_INSERT);
 
                     switch (targetInventory.getType()) {
                     /*
@@ -389,6 +823,8 @@ public class ItemMoveScheduler {
                         case FURNACE:
                         case SMOKER:
                         case BLAST_FURNACE:
+                            // smelting empties the slots without an inventory event
+                            context.setTransientDenial();
                             // try to put coal etc in the correct place
                             if (transferring.getType().isFuel() && (smartInsert || (output.getFacing() != BlockFace.DOWN && output.getFacing() != BlockFace.UP))) {
                                 PipesUtil.addFuel(inputInventory, targetInventory, transferring);
@@ -414,6 +850,8 @@ public class ItemMoveScheduler {
                     BEGIN BREWING STAND
                      */
                         case BREWING:
+                            // brewing empties the slots without an inventory event
+                            context.setTransientDenial();
                             BrewerInventory brewerInventory = (BrewerInventory) targetInventory;
                             switch (transferring.getType()) {
                                 case POTION:
@@ -503,14 +941,21 @@ public class ItemMoveScheduler {
                      */
                         default:
                             // for chests, dropper etc...
-                            PipesUtil.addItem(targetInventory, transferring);
+                            InventoryBuffer buffer = context.getBuffer(targetInventory);
+                            if (buffer != null) {
+                                buffer.add(transferring);
+                            } else {
+                                PipesUtil.addItem(targetInventory, transferring);
+                            }
                             break;
                     /*
                     END DEFAULT
                      */
                     }
                 } else if (targetBlock.getType() == Material.COMPOSTER
-                        && (output.getFacing() == BlockFace.DOWN || output.getOption(PipeOutput.Options.SMART_INSERT))) {
+                        && (output.getFacing() == BlockFace.DOWN || output.hasFlag(PipeOutput.Options.SMART_INSERT))) {
+                    // composters don't notify us when they can take items again
+                    context.setTransientDenial();
                     double itemChance = PipesUtil.getCompostableChance(itemStack.getType());
                     if (itemChance > 0) {
                         Levelled composter = (Levelled) targetBlock.getBlockData();
@@ -527,6 +972,9 @@ public class ItemMoveScheduler {
                             targetBlock.setBlockData(composter);
                         }
                     }
+                } else {
+                    // no inventory to wait for
+                    context.setTransientDenial();
                 }
 
                 if (itemStack != transferring) {
@@ -553,6 +1001,7 @@ public class ItemMoveScheduler {
         Pipes.getInstance().getServer().getScheduler().cancelTask(taskId);
         taskId = -1;
         emptyRuns = 0;
+        carriedOver = 0;
     }
 
     /**
@@ -571,18 +1020,84 @@ public class ItemMoveScheduler {
      */
     public void add(SimpleLocation scheduledItemTransfer) {
         emptyRuns = 0;
+        // the input's contents changed, it might be able to move something again
+        unblock(scheduledItemTransfer);
+        unpark(scheduledItemTransfer);
         if (!isTransferring) {
-            scheduledItemTransfers.add(scheduledItemTransfer);
+            addScheduled(scheduledItemTransfer);
         } else if (!scheduledItemTransfers.contains(scheduledItemTransfer)) {
             addItemTransfers.add(scheduledItemTransfer);
+            journal.markDirty(scheduledItemTransfer);
         }
         if (!isActive() && (!scheduledItemTransfers.isEmpty() || !addItemTransfers.isEmpty())) {
             create();
         }
     }
 
+    /**
+     * schedules an item move at the end of the current tick. An input that receives many items
+     * in one tick only gets added once. The location doesn't need to be checked for being an input,
+     * that happens once when the tick ends.
+     *
+     * @param scheduledItemTransfer the item transfer
+     */
+    public void addAtTickEnd(SimpleLocation scheduledItemTransfer) {
+        if (tickEndTransfers.add(scheduledItemTransfer)) {
+            journal.markDirty(scheduledItemTransfer);
+        }
+    }
+
+    /**
+     * adds all transfers that were collected during this tick and appends the changes
+     * of this tick to the journal, called when the tick ends
+     */
+    public void flushTickEnd() {
+        if (!tickEndTransfers.isEmpty()) {
+            for (SimpleLocation location : tickEndTransfers) {
+                if (isConnectedInput(location)) {
+                    add(location);
+                }
+            }
+            tickEndTransfers.clear();
+        }
+        journal.flush(this::isJournaled);
+    }
+
+    /**
+     * Check whether or not a location is an input of a pipe, this might search the pipe
+     *
+     * @param location the location
+     * @return <code>true</code> if there is an input with a pipe at the location
+     */
+    private boolean isConnectedInput(SimpleLocation location) {
+        if (scheduledItemTransfers.contains(location)) {
+            return true;
+        }
+        Block block = location.getBlock();
+        if (block == null || !(PipeManager.getInstance().getPipePart(block) instanceof PipeInput)) {
+            return false;
+        }
+        Set<Pipe> pipes = PipeManager.getInstance().getPipesSafe(location);
+        return !pipes.isEmpty() && pipes.iterator().next().getInput(location) != null;
+    }
+
+    /**
+     * Check whether or not an input has a transfer that needs to be restored after a restart
+     *
+     * @param location the location of the input
+     * @return <code>true</code> if the input is scheduled, parked or waits to be added
+     */
+    private boolean isJournaled(SimpleLocation location) {
+        return scheduledItemTransfers.contains(location)
+                || addItemTransfers.contains(location)
+                || tickEndTransfers.contains(location)
+                || parkedTransfers.containsKey(location);
+    }
+
     private void addQueued() {
-        scheduledItemTransfers.addAll(addItemTransfers);
+        for (SimpleLocation location : addItemTransfers) {
+            addScheduled(location);
+        }
         addItemTransfers.clear();
     }
 
@@ -590,33 +1105,71 @@ public class ItemMoveScheduler {
         return scheduledItemTransfers;
     }
 
+    /**
+     * Get the inputs that wait for a chunk to load
+     *
+     * @return the locations of the parked inputs
+     */
+    public Set<SimpleLocation> getParkedTransfers() {
+        return parkedTransfers.keySet();
+    }
+
+    /**
+     * Get the number of transfers that didn't fit into the transfer time budget of the last tick
+     *
+     * @return the number of transfers carried over to the next tick
+     */
+    public int getCarriedOver() {
+        return carriedOver;
+    }
+
+    /**
+     * Restore the transfers from the journal. Transfers from an old transfers.yml get moved into the journal.
+     */
     public static void load() {
-        YamlConfiguration oldTransfers = YamlConfiguration.loadConfiguration(new File(Pipes.getInstance().getDataFolder(), "transfers.yml"));
-        for (Map locMap : oldTransfers.getMapList("transfers")) {
-            try {
-                SimpleLocation location = SimpleLocation.deserialize(locMap);
-                getInstance().add(location);
-            } catch (IllegalArgumentException e) {
-                Pipes.getInstance().getLogger().log(Level.SEVERE, "Could not load transfer from transfers.yml: " + e.getMessage());
+        Set<SimpleLocation> transfers = getInstance().journal.load();
+        File oldFile = new File(Pipes.getInstance().getDataFolder(), "transfers.yml");
+        if (oldFile.exists()) {
+            YamlConfiguration oldTransfers = YamlConfiguration.loadConfiguration(oldFile);
+            for (Map locMap : oldTransfers.getMapList("transfers")) {
+                try {
+                    transfers.add(SimpleLocation.deserialize(locMap));
+                } catch (IllegalArgumentException e) {
+                    Pipes.getInstance().getLogger().log(Level.SEVERE, "Could not load transfer from transfers.yml: " + e.getMessage());
+                }
             }
         }
-        Pipes.getInstance().getLogger().log(Level.INFO, "Loaded " + getInstance().getTransfers().size() + " scheduled transfers.");
+        for (SimpleLocation location : transfers) {
+            getInstance().add(location);
+        }
+        getInstance().journal.flush(getInstance()::isJournaled);
+        if (oldFile.exists()) {
+            // only delete the old file once its transfers are in the journal
+            getInstance().journal.afterWrites(() -> {
+                if (!oldFile.delete()) {
+                    Pipes.getInstance().getLogger().log(Level.WARNING, "Could not delete the migrated transfers.yml");
+                }
+            });
+        }
+        Pipes.getInstance().getLogger().log(Level.INFO, "Loaded " + transfers.size() + " scheduled transfers.");
     }
 
+    /**
+     * Stop the scheduler. The transfers are already in the journal, only the changes of the last tick get written.
+     */
     public static void exit() {
         getInstance().kill();
-        YamlConfiguration oldTransfers = new YamlConfiguration();
-        List<Map<String, Object>> transferList = new ArrayList<>();
-        for (SimpleLocation transfer : getInstance().getTransfers()) {
-            transferList.add(transfer.serialize());
-        }
-        oldTransfers.set("transfers", transferList);
-        try {
-            oldTransfers.save(new File(Pipes.getInstance().getDataFolder(), "transfers.yml"));
-            Pipes.getInstance().getLogger().log(Level.INFO, "Saved " + transferList.size() + " scheduled transfers.");
-        } catch (IOException e) {
-            Pipes.getInstance().getLogger().log(Level.SEVERE, "Could not write transfers to transfers.yml", e);
-        }
+        getInstance().journal.close(getInstance()::isJournaled);
     }
 
+    private static class BlockedTransfer {
+        private final Set<SimpleLocation> targets;
+        private int backoff;
+        private int wakeTick;
+
+        private BlockedTransfer(Set<SimpleLocation> targets, int backoff) {
+            this.targets = targets;
+            this.backoff = backoff;
+        }
+    }
 }
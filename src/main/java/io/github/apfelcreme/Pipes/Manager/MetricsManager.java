@@ -0,0 +1,306 @@
+package io.github.apfelcreme.Pipes.Manager;
+
+import io.github.apfelcreme.Pipes.Pipe.PipeOutput;
+import io.github.apfelcreme.Pipes.Pipe.SimpleLocation;
+import io.github.apfelcreme.Pipes.PipesConfig;
+import org.bukkit.Bukkit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+public class MetricsManager {
+
+    /**
+     * the MetricsManager instance
+     */
+    private static MetricsManager instance = null;
+
+    /**
+     * the metrics of the inputs in the current window
+     */
+    private Map<SimpleLocation, Metrics> current;
+
+    /**
+     * the metrics of the inputs in the previous window
+     */
+    private Map<SimpleLocation, Metrics> previous;
+
+    /**
+     * the tick that the current window started in
+     */
+    private int windowStart;
+
+    /**
+     * the tick that the previous window started in, -1 if there is none
+     */
+    private int previousStart;
+
+    /**
+     * constructor
+     */
+    private MetricsManager() {
+        current = new HashMap<>();
+        previous = new HashMap<>();
+        windowStart = Bukkit.getCurrentTick();
+        previousStart = -1;
+    }
+
+    /**
+     * returns the MetricsManager instance
+     *
+     * @return the MetricsManager instance
+     */
+    public static MetricsManager getInstance() {
+        if (instance == null) {
+            instance = new MetricsManager();
+        }
+        return instance;
+    }
+
+    /**
+     * Get the metrics of an input in the current window
+     *
+     * @param input the location of the input
+     * @return the metrics to count on
+     */
+    public Metrics get(SimpleLocation input) {
+        int tick = Bukkit.getCurrentTick();
+        if (tick - windowStart >= Math.max(PipesConfig.getMetricsWindow(), 1) * 20) {
+            previous = current;
+            previousStart = windowStart;
+            current = new HashMap<>();
+            windowStart = tick;
+        }
+        Metrics metrics = current.get(input);
+        if (metrics == null) {
+            metrics = new Metrics();
+            current.put(input, metrics);
+        }
+        return metrics;
+    }
+
+    /**
+     * Get the number of seconds that the metrics cover
+     *
+     * @return the seconds of the current and previous window
+     */
+    public int getSeconds() {
+        return (Bukkit.getCurrentTick() - (previousStart != -1 ? previousStart : windowStart)) / 20;
+    }
+
+    /**
+     * Get the pipes that took the most time to run. Inputs of the same cached or indexed pipe are added up.
+     *
+     * @param count the maximum number of pipes to return
+     * @return the most expensive pipes, the most expensive first
+     */
+    public List<PipeStats> getTopPipes(int count) {
+        Map<SimpleLocation, Metrics> inputs = new HashMap<>();
+        for (Map<SimpleLocation, Metrics> window : Arrays.asList(previous, current)) {
+            for (Map.Entry<SimpleLocation, Metrics> entry : window.entrySet()) {
+                inputs.computeIfAbsent(entry.getKey(), l -> new Metrics()).add(entry.getValue());
+            }
+        }
+
+        Map<Object, PipeStats> pipes = new IdentityHashMap<>();
+        for (Map.Entry<SimpleLocation, Metrics> entry : inputs.entrySet()) {
+            Object pipe = PipeManager.getInstance().getPipeCache().getIfPresent(entry.getKey());
+            if (pipe == null) {
+                pipe = PipeIndex.getInstance().get(entry.getKey());
+            }
+            if (pipe == null) {
+                pipe = entry.getKey();
+            }
+            pipes.computeIfAbsent(pipe, p -> new PipeStats(entry.getKey())).add(entry.getValue());
+        }
+
+        List<PipeStats> result = new ArrayList<>(pipes.values());
+        result.sort((a, b) -> Long.compare(b.getMetrics().getNanos(), a.getMetrics().getNanos()));
+        return result.size() > count ? new ArrayList<>(result.subList(0, count)) : result;
+    }
+
+    /**
+     * Forget all metrics
+     */
+    public void clear() {
+        current.clear();
+        previous.clear();
+        windowStart = Bukkit.getCurrentTick();
+        previousStart = -1;
+    }
+
+    /**
+     * The counters of one input or pipe
+     */
+    public static class Metrics {
+        private long executions = 0;
+        private long skips = 0;
+        private long nanos = 0;
+        private long items = 0;
+        private long stacks = 0;
+        private long events = 0;
+        private final long[] failures = new long[PipeOutput.ResultType.values().length];
+
+        /**
+         * Count a run of the input
+         *
+         * @param nanos the time the run took in nanoseconds
+         */
+        public void addExecution(long nanos) {
+            executions++;
+            this.nanos += nanos;
+        }
+
+        /**
+         * Count a run of the input that stopped before moving items, e.g. because of the transfer limits
+         *
+         * @param nanos the time the run took in nanoseconds
+         */
+        public void addSkip(long nanos) {
+            skips++;
+            this.nanos += nanos;
+        }
+
+        /**
+         * Count a stack that items were moved from
+         *
+         * @param items the number of items that were moved
+         */
+        public void addStack(int items) {
+            stacks++;
+            this.items += items;
+        }
+
+        /**
+         * Count an output that didn't accept an item
+         *
+         * @param type why the output didn't accept it
+         */
+        public void addFailure(PipeOutput.ResultType type) {
+            failures[type.ordinal()]++;
+        }
+
+        /**
+         * Count an event that was fired for a transfer
+         */
+        public void addEvent() {
+            events++;
+        }
+
+        private void add(Metrics other) {
+            executions += other.executions;
+            skips += other.skips;
+            nanos += other.nanos;
+            items += other.items;
+            stacks += other.stacks;
+            events += other.events;
+            for (int i = 0; i < failures.length; i++) {
+                failures[i] += other.failures[i];
+            }
+        }
+
+        public long getExecutions() {
+            return executions;
+        }
+
+        public long getSkips() {
+            return skips;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public long getItems() {
+            return items;
+        }
+
+        public long getStacks() {
+            return stacks;
+        }
+
+        public long getEvents() {
+            return events;
+        }
+
+        /**
+         * Get how often outputs didn't accept an item for a reason
+         *
+         * @param type the reason
+         * @return the number of failed attempts
+         */
+        public long getFailures(PipeOutput.ResultType type) {
+            return failures[type.ordinal()];
+        }
+
+        /**
+         * Get how often outputs didn't accept an item
+         *
+         * @return the number of all failed attempts
+         */
+        public long getFailures() {
+            long sum = 0;
+            for (long failure : failures) {
+                sum += failure;
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * The added up metrics of all inputs of a pipe
+     */
+    public static class PipeStats {
+        private final SimpleLocation location;
+        private final Metrics metrics = new Metrics();
+        private int inputs = 0;
+
+        private PipeStats(SimpleLocation location) {
+            this.location = location;
+        }
+
+        private void add(Metrics inputMetrics) {
+            metrics.add(inputMetrics);
+            inputs++;
+        }
+
+        /**
+         * returns the location of one input of the pipe
+         *
+         * @return the location of the input
+         */
+        public SimpleLocation getLocation() {
+            return location;
+        }
+
+        public Metrics getMetrics() {
+            return metrics;
+        }
+
+        public int getInputs() {
+            return inputs;
+        }
+    }
+}
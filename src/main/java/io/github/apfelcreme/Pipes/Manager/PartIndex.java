@@ -0,0 +1,203 @@
+package io.github.apfelcreme.Pipes.Manager;
+
+import io.github.apfelcreme.Pipes.Pipe.SimpleLocation;
+import io.github.apfelcreme.Pipes.PipesItem;
+import io.github.apfelcreme.Pipes.PipesUtil;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+public class PartIndex {
+
+    /**
+     * the PartIndex instance
+     */
+    private static PartIndex instance = null;
+
+    /**
+     * the block keys of all pipe parts by world and chunk, only contains chunks that were indexed
+     */
+    private final Map<String, Long2ObjectMap<LongSet>> chunkIndex;
+
+    /**
+     * constructor
+     */
+    private PartIndex() {
+        chunkIndex = new HashMap<>();
+    }
+
+    /**
+     * returns the PartIndex instance
+     *
+     * @return the PartIndex instance
+     */
+    public static PartIndex getInstance() {
+        if (instance == null) {
+            instance = new PartIndex();
+        }
+        return instance;
+    }
+
+    /**
+     * Check whether or not a block might be a pipe part. This is a single lookup and
+     * can be used to skip reading the block state of blocks that can't be one.
+     *
+     * @param block the block
+     * @return <code>false</code> if the block is definitely not a pipe part; <code>true</code> if it might be one
+     */
+    public boolean mightBePart(Block block) {
+        return mightBePart(block.getWorld().getName(), block.getX(), block.getY(), block.getZ());
+    }
+
+    /**
+     * Check whether or not the block at a location might be a pipe part
+     *
+     * @param location the location
+     * @return <code>false</code> if the block is definitely not a pipe part; <code>true</code> if it might be one
+     */
+    public boolean mightBePart(Location location) {
+        return location == null || location.getWorld() == null
+                || mightBePart(location.getWorld().getName(), location.getBlockX(), location.getBlockY(), location.getBlockZ());
+    }
+
+    private boolean mightBePart(String worldName, int x, int y, int z) {
+        Long2ObjectMap<LongSet> chunks = chunkIndex.get(worldName);
+        if (chunks == null) {
+            return true;
+        }
+        LongSet parts = chunks.get(Chunk.getChunkKey(x >> 4, z >> 4));
+        // chunks that weren't indexed could contain anything
+        return parts == null || parts.contains(Block.getBlockKey(x, y, z));
+    }
+
+    /**
+     * Add a pipe part that was created or found to the index
+     *
+     * @param location the location of the part
+     */
+    public void add(SimpleLocation location) {
+        Long2ObjectMap<LongSet> chunks = chunkIndex.get(location.getWorldName());
+        if (chunks == null) {
+            return;
+        }
+        long chunkKey = Chunk.getChunkKey(location.getX() >> 4, location.getZ() >> 4);
+        LongSet parts = chunks.get(chunkKey);
+        if (parts == LongSets.EMPTY_SET) {
+            parts = new LongOpenHashSet();
+            chunks.put(chunkKey, parts);
+        }
+        if (parts != null) {
+            parts.add(location.getBlockKey());
+        }
+    }
+
+    /**
+     * Remove a pipe part that was broken from the index
+     *
+     * @param location the location of the part
+     */
+    public void remove(SimpleLocation location) {
+        Long2ObjectMap<LongSet> chunks = chunkIndex.get(location.getWorldName());
+        if (chunks == null) {
+            return;
+        }
+        long chunkKey = Chunk.getChunkKey(location.getX() >> 4, location.getZ() >> 4);
+        LongSet parts = chunks.get(chunkKey);
+        if (parts != null && parts.remove(location.getBlockKey()) && parts.isEmpty()) {
+            chunks.put(chunkKey, LongSets.EMPTY_SET);
+        }
+    }
+
+    /**
+     * Find all pipe parts in a chunk. Only blocks that can be pipe parts get their data read.
+     *
+     * @param chunk the chunk
+     */
+    public void indexChunk(Chunk chunk) {
+        LongSet parts = LongSets.EMPTY_SET;
+        for (BlockState state : chunk.getTileEntities(false)) {
+            Material type = state.getType();
+            if ((type == PipesItem.PIPE_INPUT.getMaterial() || type == PipesItem.PIPE_OUTPUT.getMaterial() || type == PipesItem.CHUNK_LOADER.getMaterial())
+                    && PipesUtil.getPipesItem(state.getBlock()) != null) {
+                if (parts == LongSets.EMPTY_SET) {
+                    parts = new LongOpenHashSet();
+                }
+                parts.add(Block.getBlockKey(state.getX(), state.getY(), state.getZ()));
+            }
+        }
+        chunkIndex.computeIfAbsent(chunk.getWorld().getName(), w -> new Long2ObjectOpenHashMap<>()).put(chunk.getChunkKey(), parts);
+    }
+
+    /**
+     * Get the block keys of all parts in a chunk
+     *
+     * @param chunk the chunk
+     * @return the block keys or null if the chunk isn't indexed
+     */
+    public LongSet getParts(Chunk chunk) {
+        Long2ObjectMap<LongSet> chunks = chunkIndex.get(chunk.getWorld().getName());
+        return chunks != null ? chunks.get(chunk.getChunkKey()) : null;
+    }
+
+    /**
+     * Forget the parts of a chunk that gets unloaded
+     *
+     * @param chunk the chunk
+     */
+    public void unloadChunk(Chunk chunk) {
+        Long2ObjectMap<LongSet> chunks = chunkIndex.get(chunk.getWorld().getName());
+        if (chunks != null) {
+            chunks.remove(chunk.getChunkKey());
+        }
+    }
+
+    /**
+     * Forget all parts of a world that gets unloaded
+     *
+     * @param world the world
+     */
+    public void unload(World world) {
+        chunkIndex.remove(world.getName());
+    }
+
+    /**
+     * Index all chunks that are already loaded
+     */
+    public static void load() {
+        for (World world : Bukkit.getWorlds()) {
+            for (Chunk chunk : world.getLoadedChunks()) {
+                getInstance().indexChunk(chunk);
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package io.github.apfelcreme.Pipes.Manager;
+
+import io.github.apfelcreme.Pipes.Pipe.AbstractPipePart;
+import io.github.apfelcreme.Pipes.Pipe.SimpleLocation;
+import org.bukkit.Chunk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+public class PartSaveQueue {
+
+    /**
+     * the PartSaveQueue instance
+     */
+    private static PartSaveQueue instance = null;
+
+    /**
+     * the parts whose options were changed but not yet written to their block
+     */
+    private final Set<AbstractPipePart> dirtyParts;
+
+    /**
+     * constructor
+     */
+    private PartSaveQueue() {
+        dirtyParts = Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    /**
+     * returns the PartSaveQueue instance
+     *
+     * @return the PartSaveQueue instance
+     */
+    public static PartSaveQueue getInstance() {
+        if (instance == null) {
+            instance = new PartSaveQueue();
+        }
+        return instance;
+    }
+
+    /**
+     * Remember that the options of a part need to be written to its block
+     *
+     * @param part the part
+     */
+    public void markDirty(AbstractPipePart part) {
+        dirtyParts.add(part);
+    }
+
+    /**
+     * Write the options of a part now if it is dirty
+     *
+     * @param part the part
+     */
+    public void flush(AbstractPipePart part) {
+        if (dirtyParts.remove(part)) {
+            part.saveOptions();
+        }
+    }
+
+    /**
+     * Write the options of all dirty parts, each part's block only gets updated once
+     */
+    public void flush() {
+        if (dirtyParts.isEmpty()) {
+            return;
+        }
+        List<AbstractPipePart> parts = new ArrayList<>(dirtyParts);
+        dirtyParts.clear();
+        for (AbstractPipePart part : parts) {
+            part.saveOptions();
+        }
+    }
+
+    /**
+     * Write the options of all dirty parts in a chunk, e.g. before it gets unloaded
+     *
+     * @param chunk the chunk
+     */
+    public void flushChunk(Chunk chunk) {
+        if (dirtyParts.isEmpty()) {
+            return;
+        }
+        String worldName = chunk.getWorld().getName();
+        for (Iterator<AbstractPipePart> it = dirtyParts.iterator(); it.hasNext();) {
+            AbstractPipePart part = it.next();
+            SimpleLocation location = part.getLocation();
+            if (location.getX() >> 4 == chunk.getX() && location.getZ() >> 4 == chunk.getZ()
+                    && location.getWorldName().equals(worldName)) {
+                it.remove();
+                part.saveOptions();
+            }
+        }
+    }
+
+    /**
+     * returns the number of parts that wait to be written
+     *
+     * @return the number of dirty parts
+     */
+    public int size() {
+        return dirtyParts.size();
+    }
+
+    /**
+     * Write all dirty parts, called when the plugin gets disabled
+     */
+    public static void exit() {
+        getInstance().flush();
+    }
+}
@@ -0,0 +1,408 @@
+package io.github.apfelcreme.Pipes.Manager;
+
+import io.github.apfelcreme.Pipes.Pipe.IndexedPipe;
+import io.github.apfelcreme.Pipes.Pipe.Pipe;
+import io.github.apfelcreme.Pipes.Pipe.PipeInput;
+import io.github.apfelcreme.Pipes.Pipe.SimpleLocation;
+import io.github.apfelcreme.Pipes.Pipes;
+import io.github.apfelcreme.Pipes.PipesUtil;
+import org.bukkit.Chunk;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.BlockFace;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.BufferedInputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+public class PipeIndex {
+
+    /**
+     * the version of the index files
+     */
+    private static final int FILE_VERSION = 1;
+
+    /**
+     * the PipeIndex instance
+     */
+    private static PipeIndex instance = null;
+
+    /**
+     * the indexed pipes by the locations of their inputs
+     */
+    private final Map<SimpleLocation, IndexedPipe> inputIndex;
+
+    /**
+     * the indexed pipes by world and the chunks they have blocks in
+     */
+    private final Map<String, Map<Long, Set<IndexedPipe>>> chunkIndex;
+
+    /**
+     * writes the index files in the order they were saved, off the main thread
+     */
+    private final ExecutorService writer;
+
+    /**
+     * constructor
+     */
+    private PipeIndex() {
+        inputIndex = new HashMap<>();
+        chunkIndex = new HashMap<>();
+        writer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "Pipes Index Writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * returns the PipeIndex instance
+     *
+     * @return the PipeIndex instance
+     */
+    public static PipeIndex getInstance() {
+        if (instance == null) {
+            instance = new PipeIndex();
+        }
+        return instance;
+    }
+
+    /**
+     * Get the indexed pipe that has an input at a location
+     *
+     * @param location the location of the input
+     * @return the indexed pipe or <code>null</code> if none is known
+     */
+    public IndexedPipe get(SimpleLocation location) {
+        return inputIndex.get(location);
+    }
+
+    /**
+     * returns the amount of indexed pipes
+     *
+     * @return the amount of indexed pipes
+     */
+    public int size() {
+        return (int) inputIndex.values().stream().distinct().count();
+    }
+
+    /**
+     * Add or replace the index entry of a pipe
+     *
+     * @param pipe the pipe to index
+     */
+    public void put(Pipe pipe) {
+        if (pipe == null || pipe.getInputs().isEmpty()) {
+            return;
+        }
+        remove(pipe);
+        add(new IndexedPipe(pipe));
+    }
+
+    private void add(IndexedPipe indexedPipe) {
+        for (SimpleLocation input : indexedPipe.getInputs()) {
+            inputIndex.put(input, indexedPipe);
+        }
+        Map<Long, Set<IndexedPipe>> chunks = chunkIndex.computeIfAbsent(indexedPipe.getWorldName(), w -> new HashMap<>());
+        for (long chunk : indexedPipe.getChunks()) {
+            chunks.computeIfAbsent(chunk, c -> new LinkedHashSet<>()).add(indexedPipe);
+        }
+    }
+
+    /**
+     * Add a glass block to the index entry of a pipe. Only for blocks that plainly extend the pipe,
+     * any other change needs to replace the entry with {@link #put(Pipe)}.
+     *
+     * @param pipe     the pipe the block was added to
+     * @param location the location of the block
+     */
+    public void addBlock(Pipe pipe, SimpleLocation location) {
+        IndexedPipe indexedPipe = getIndexed(pipe);
+        if (indexedPipe == null) {
+            put(pipe);
+            return;
+        }
+        indexedPipe.addBlock(location);
+        chunkIndex.computeIfAbsent(indexedPipe.getWorldName(), w -> new HashMap<>())
+                .computeIfAbsent(Chunk.getChunkKey(location.getX() >> 4, location.getZ() >> 4), c -> new LinkedHashSet<>())
+                .add(indexedPipe);
+    }
+
+    /**
+     * Remove the index entry of a pipe
+     *
+     * @param pipe the pipe to remove
+     */
+    public void remove(Pipe pipe) {
+        if (pipe == null) {
+            return;
+        }
+        for (PipeInput input : pipe.getInputs().values()) {
+            IndexedPipe indexedPipe = inputIndex.get(input.getLocation());
+            if (indexedPipe != null) {
+                remove(indexedPipe);
+            }
+        }
+    }
+
+    /**
+     * Remove an indexed pipe
+     *
+     * @param indexedPipe the indexed pipe to remove
+     */
+    public void remove(IndexedPipe indexedPipe) {
+        for (SimpleLocation input : indexedPipe.getInputs()) {
+            inputIndex.remove(input, indexedPipe);
+        }
+        Map<Long, Set<IndexedPipe>> chunks = chunkIndex.get(indexedPipe.getWorldName());
+        if (chunks != null) {
+            for (long chunk : indexedPipe.getChunks()) {
+                Set<IndexedPipe> pipes = chunks.get(chunk);
+                if (pipes != null) {
+                    pipes.remove(indexedPipe);
+                    if (pipes.isEmpty()) {
+                        chunks.remove(chunk);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove all indexed pipes that contain the location or one of its neighbours. This includes pipes that
+     * are loaded into the PipeManager's cache, they get indexed again once they change or get searched again.
+     *
+     * @param location the location that changed
+     */
+    public void invalidate(SimpleLocation location) {
+        Map<Long, Set<IndexedPipe>> chunks = chunkIndex.get(location.getWorldName());
+        if (chunks == null || chunks.isEmpty()) {
+            return;
+        }
+        List<IndexedPipe> invalid = new ArrayList<>();
+        check(chunks, location, invalid);
+        for (BlockFace face : PipesUtil.BLOCK_FACES) {
+            check(chunks, location.getRelative(face), invalid);
+        }
+        for (IndexedPipe indexedPipe : invalid) {
+            remove(indexedPipe);
+        }
+    }
+
+    private void check(Map<Long, Set<IndexedPipe>> chunks, SimpleLocation location, Collection<IndexedPipe> invalid) {
+        Set<IndexedPipe> pipes = chunks.get(Chunk.getChunkKey(location.getX() >> 4, location.getZ() >> 4));
+        if (pipes == null) {
+            return;
+        }
+        for (IndexedPipe indexedPipe : pipes) {
+            if (!invalid.contains(indexedPipe) && indexedPipe.contains(location)) {
+                invalid.add(indexedPipe);
+            }
+        }
+    }
+
+    private IndexedPipe getIndexed(Pipe pipe) {
+        for (SimpleLocation input : pipe.getInputs().keySet()) {
+            IndexedPipe indexedPipe = inputIndex.get(input);
+            if (indexedPipe != null) {
+                return indexedPipe;
+            }
+        }
+        return null;
+    }
+
+    private Collection<IndexedPipe> getPipes(String worldName) {
+        Map<Long, Set<IndexedPipe>> chunks = chunkIndex.get(worldName);
+        if (chunks == null) {
+            return Collections.emptySet();
+        }
+        Set<IndexedPipe> pipes = new LinkedHashSet<>();
+        for (Set<IndexedPipe> chunkPipes : chunks.values()) {
+            pipes.addAll(chunkPipes);
+        }
+        return pipes;
+    }
+
+    private static File getFile(World world) {
+        return new File(new File(Pipes.getInstance().getDataFolder(), "index"), world.getName() + ".dat");
+    }
+
+    /**
+     * Load the index of a world from its file
+     *
+     * @param world the world to load
+     */
+    public static void load(World world) {
+        File file = getFile(world);
+        if (!file.exists()) {
+            return;
+        }
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int version = in.readInt();
+            if (version != FILE_VERSION) {
+                Pipes.getInstance().getLogger().log(Level.WARNING, "Unknown pipe index version " + version + " in " + file.getName() + ", ignoring it.");
+                return;
+            }
+            int pipes = in.readInt();
+            for (int i = 0; i < pipes; i++) {
+                Material type = Material.getMaterial(in.readUTF());
+                LinkedHashSet<SimpleLocation> inputs = readLocations(in, world);
+                LinkedHashSet<SimpleLocation> outputs = readLocations(in, world);
+                LinkedHashSet<SimpleLocation> chunkLoaders = readLocations(in, world);
+                LinkedHashSet<SimpleLocation> pipeBlocks = readLocations(in, world);
+                if (type != null && !inputs.isEmpty()) {
+                    getInstance().add(new IndexedPipe(world.getName(), type, inputs, outputs, chunkLoaders, pipeBlocks));
+                    count++;
+                }
+            }
+        } catch (IOException e) {
+            Pipes.getInstance().getLogger().log(Level.SEVERE, "Could not load pipe index from " + file.getName(), e);
+        }
+        Pipes.getInstance().getLogger().log(Level.INFO, "Loaded " + count + " indexed pipes for world " + world.getName() + ".");
+    }
+
+    private static LinkedHashSet<SimpleLocation> readLocations(DataInputStream in, World world) throws IOException {
+        int size = in.readInt();
+        LinkedHashSet<SimpleLocation> locations = new LinkedHashSet<>();
+        for (int i = 0; i < size; i++) {
+            locations.add(new SimpleLocation(world.getName(), in.readInt(), in.readInt(), in.readInt()));
+        }
+        return locations;
+    }
+
+    /**
+     * Save the index of a world to its file
+     *
+     * @param world the world to save
+     * @param async whether or not to return before the file was written
+     */
+    public static void save(World world, boolean async) {
+        Collection<IndexedPipe> pipes = getInstance().getPipes(world.getName());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(FILE_VERSION);
+            out.writeInt(pipes.size());
+            for (IndexedPipe pipe : pipes) {
+                out.writeUTF(pipe.getType().name());
+                writeLocations(out, pipe.getInputs());
+                writeLocations(out, pipe.getOutputs());
+                writeLocations(out, pipe.getChunkLoaders());
+                writeLocations(out, pipe.getPipeBlocks());
+            }
+        } catch (IOException e) {
+            Pipes.getInstance().getLogger().log(Level.SEVERE, "Could not serialize pipe index of world " + world.getName(), e);
+            return;
+        }
+
+        File file = getFile(world);
+        Runnable write = () -> {
+            try {
+                file.getParentFile().mkdirs();
+                File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+                Files.write(temp.toPath(), bytes.toByteArray());
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Pipes.getInstance().getLogger().log(Level.SEVERE, "Could not write pipe index to " + file.getName(), e);
+            }
+        };
+        // all writes go through the same thread so that they can't overlap on the temporary file
+        Future<?> written = getInstance().writer.submit(write);
+        if (!async) {
+            try {
+                written.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                Pipes.getInstance().getLogger().log(Level.SEVERE, "Could not write pipe index to " + file.getName(), e.getCause());
+            }
+        }
+    }
+
+    private static void writeLocations(DataOutputStream out, Collection<SimpleLocation> locations) throws IOException {
+        out.writeInt(locations.size());
+        for (SimpleLocation location : locations) {
+            out.writeInt(location.getX());
+            out.writeInt(location.getY());
+            out.writeInt(location.getZ());
+        }
+    }
+
+    /**
+     * Drop the index of a world from memory
+     *
+     * @param world the world to unload
+     */
+    public static void unload(World world) {
+        for (IndexedPipe pipe : getInstance().getPipes(world.getName())) {
+            getInstance().remove(pipe);
+        }
+        getInstance().chunkIndex.remove(world.getName());
+    }
+
+    /**
+     * Load the index of all loaded worlds
+     */
+    public static void load() {
+        for (World world : Pipes.getInstance().getServer().getWorlds()) {
+            load(world);
+        }
+    }
+
+    /**
+     * Save the index of all loaded worlds and wait for all writes to finish
+     */
+    public static void exit() {
+        for (World world : Pipes.getInstance().getServer().getWorlds()) {
+            save(world, true);
+        }
+        ExecutorService writer = getInstance().writer;
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                Pipes.getInstance().getLogger().log(Level.WARNING, "Pipe index writes took too long, some might be lost.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        instance = null;
+    }
+}
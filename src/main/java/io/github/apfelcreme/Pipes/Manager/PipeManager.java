@@ -1,5 +1,6 @@
 package io.github.apfelcreme.Pipes.Manager;
 
+import co.aikar.timings.lib.MCTiming;
 import com.destroystokyo.paper.MaterialTags;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
@@ -7,17 +8,29 @@ import com.google.common.cache.RemovalCause;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
 import io.github.apfelcreme.Pipes.Exception.ChunkNotLoadedException;
+import io.github.apfelcreme.Pipes.Exception.LocationException;
 import io.github.apfelcreme.Pipes.Exception.PipeTooLongException;
 import io.github.apfelcreme.Pipes.Exception.TooManyOutputsException;
+import io.github.apfelcreme.Pipes.Jfr.PipeSearchEvent;
 import io.github.apfelcreme.Pipes.Pipe.AbstractPipePart;
 import io.github.apfelcreme.Pipes.Pipe.ChunkLoader;
+import io.github.apfelcreme.Pipes.Pipe.IndexedPipe;
+import io.github.apfelcreme.Pipes.Pipe.LocationMap;
 import io.github.apfelcreme.Pipes.Pipe.Pipe;
 import io.github.apfelcreme.Pipes.Pipe.PipeInput;
 import io.github.apfelcreme.Pipes.Pipe.PipeOutput;
 import io.github.apfelcreme.Pipes.Pipe.SimpleLocation;
+import io.github.apfelcreme.Pipes.Pipes;
 import io.github.apfelcreme.Pipes.PipesConfig;
 import io.github.apfelcreme.Pipes.PipesItem;
 import io.github.apfelcreme.Pipes.PipesUtil;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.block.Block;
@@ -27,13 +40,16 @@ import org.bukkit.block.Container;
 import org.bukkit.inventory.InventoryHolder;
 import org.bukkit.persistence.PersistentDataType;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
@@ -60,6 +76,10 @@ import java.util.concurrent.TimeUnit;
  */
 public class PipeManager {
 
+    private final MCTiming TIMINGS_SEARCH;
+    private final MCTiming TIMINGS_RESTORE;
+    private final MCTiming TIMINGS_SPLIT;
+
     /**
      * the DetectionManager instance
      */
@@ -73,17 +93,22 @@ public class PipeManager {
     /**
      * a cache to stop endless pipe checks, this is for parts that can be attached to only one pipe (glass pipe blocks)
      */
-    private final Map<SimpleLocation, Pipe> singleCache;
+    private final LocationMap<Pipe> singleCache;
 
     /**
      * a cache to stop endless pipe checks, this is for parts that can be attached to multiple pipes (outputs and chunk loader)
      */
-    private final Map<SimpleLocation, Set<Pipe>> multiCache;
+    private final LocationMap<Set<Pipe>> multiCache;
 
     /**
      * A cache for pipe parts
      */
-    private final Map<SimpleLocation, AbstractPipePart> pipePartCache;
+    private final LocationMap<AbstractPipePart> pipePartCache;
+
+    /**
+     * the cached pipes by world and the chunks they are in, used to keep their loaded state up to date
+     */
+    private final Map<String, Long2ObjectMap<Set<Pipe>>> chunkPipes;
 
     /**
      * constructor
@@ -94,9 +119,15 @@ public class PipeManager {
                 .expireAfterWrite(PipesConfig.getPipeCacheDuration(), TimeUnit.SECONDS)
                 .removalListener(new PipeRemovalListener())
                 .build();
-        singleCache = new HashMap<>();
-        multiCache = new HashMap<>();
-        pipePartCache = new HashMap<>();
+        singleCache = new LocationMap<>();
+        multiCache = new LocationMap<>();
+        pipePartCache = new LocationMap<>();
+        chunkPipes = new HashMap<>();
+
+        MCTiming timingsPipe = Pipes.getTiming("pipe");
+        TIMINGS_SEARCH = Pipes.getTiming("## search", timingsPipe);
+        TIMINGS_RESTORE = Pipes.getTiming("## restore", timingsPipe);
+        TIMINGS_SPLIT = Pipes.getTiming("## split", timingsPipe);
     }
 
     /**
@@ -113,7 +144,7 @@ public class PipeManager {
      *
      * @return the single cache
      */
-    public Map<SimpleLocation, Pipe> getSingleCache() {
+    public LocationMap<Pipe> getSingleCache() {
         return singleCache;
     }
 
@@ -122,7 +153,7 @@ public class PipeManager {
      *
      * @return the multi cache
      */
-    public Map<SimpleLocation, Set<Pipe>> getMultiCache() {
+    public LocationMap<Set<Pipe>> getMultiCache() {
         return multiCache;
     }
 
@@ -131,7 +162,7 @@ public class PipeManager {
      *
      * @return the pipe part cache
      */
-    public Map<SimpleLocation, AbstractPipePart> getPipePartCache() {
+    public LocationMap<AbstractPipePart> getPipePartCache() {
         return pipePartCache;
     }
 
@@ -166,16 +197,101 @@ public class PipeManager {
                 return null;
             }
 
-            pipe = isPipe(block);
+            IndexedPipe indexedPipe = PipeIndex.getInstance().get(location);
+            if (indexedPipe != null) {
+                try (MCTiming t = TIMINGS_RESTORE.startTiming()) {
+                    pipe = restorePipe(indexedPipe);
+                }
+            }
+            if (pipe == null) {
+                pipe = isPipe(block);
+            }
             if (pipe != null) {
                 addPipe(pipe);
             }
         } else {
-            pipe.checkLoaded(location);
+            try {
+                pipe.checkLoaded(location);
+            } catch (ChunkNotLoadedException e) {
+                if (!pipe.getChunkLoaders().isEmpty()) {
+                    ChunkTicketManager.getInstance().request(pipe);
+                }
+                throw e;
+            }
         }
         return pipe;
     }
 
+    /**
+     * Restore a pipe from its index entry without searching for its blocks again.
+     * The indexed blocks get checked as the world might have changed without us noticing
+     * (e.g. explosions, other plugins or edits while the server was offline).
+     *
+     * @param indexedPipe the indexed pipe
+     * @return the restored pipe or <code>null</code> if the index entry can't be used and the pipe has to be searched
+     * @throws ChunkNotLoadedException When the pipe reaches into a chunk that is not loaded
+     */
+    private Pipe restorePipe(IndexedPipe indexedPipe) throws ChunkNotLoadedException {
+        if (PipesConfig.getMaxPipeLength() > 0 && indexedPipe.getPipeBlocks().size() > PipesConfig.getMaxPipeLength()
+                || PipesConfig.getMaxPipeOutputs() > 0 && indexedPipe.getOutputs().size() > PipesConfig.getMaxPipeOutputs()) {
+            return null;
+        }
+        World world = Bukkit.getWorld(indexedPipe.getWorldName());
+        if (world == null) {
+            return null;
+        }
+        SimpleLocation unloaded = null;
+        for (long chunkKey : indexedPipe.getChunks()) {
+            if (!world.isChunkLoaded((int) chunkKey, (int) (chunkKey >> 32))) {
+                if (unloaded == null) {
+                    unloaded = new SimpleLocation(indexedPipe.getWorldName(), (int) chunkKey << 4, 0, (int) (chunkKey >> 32) << 4);
+                }
+                if (indexedPipe.getChunkLoaders().isEmpty()) {
+                    break;
+                }
+                // load all missing chunks at once in the background
+                ChunkTicketManager.getInstance().request(world, chunkKey);
+            }
+        }
+        if (unloaded != null) {
+            throw new ChunkNotLoadedException(unloaded);
+        }
+
+        for (SimpleLocation location : indexedPipe.getPipeBlocks()) {
+            if (world.getBlockAt(location.getX(), location.getY(), location.getZ()).getType() != indexedPipe.getType()) {
+                PipeIndex.getInstance().remove(indexedPipe);
+                return null;
+            }
+        }
+
+        LinkedHashMap<SimpleLocation, PipeInput> inputs = new LinkedHashMap<>();
+        LinkedHashMap<SimpleLocation, PipeOutput> outputs = new LinkedHashMap<>();
+        LinkedHashMap<SimpleLocation, ChunkLoader> chunkLoaders = new LinkedHashMap<>();
+        try {
+            for (SimpleLocation location : indexedPipe.getInputs()) {
+                inputs.put(location, (PipeInput) getIndexedPart(location, PipesItem.PIPE_INPUT));
+            }
+            for (SimpleLocation location : indexedPipe.getOutputs()) {
+                outputs.put(location, (PipeOutput) getIndexedPart(location, PipesItem.PIPE_OUTPUT));
+            }
+            for (SimpleLocation location : indexedPipe.getChunkLoaders()) {
+                chunkLoaders.put(location, (ChunkLoader) getIndexedPart(location, PipesItem.CHUNK_LOADER));
+            }
+        } catch (IllegalStateException e) {
+            PipeIndex.getInstance().remove(indexedPipe);
+            return null;
+        }
+        return new Pipe(inputs, outputs, chunkLoaders, new LinkedHashSet<>(indexedPipe.getPipeBlocks()), indexedPipe.getType());
+    }
+
+    private AbstractPipePart getIndexedPart(SimpleLocation location, PipesItem type) {
+        AbstractPipePart part = getPipePart(location.getBlock());
+        if (part == null || part.getType() != type) {
+            throw new IllegalStateException("Indexed " + type + " at " + location + " does not exist anymore!");
+        }
+        return part;
+    }
+
     /**
      * Get the pipe that is at that location, returns an empty set instead of throwing an exception
      *
@@ -283,6 +399,7 @@ public class PipeManager {
             return;
         }
 
+        PipeIndex.getInstance().remove(pipe);
         for (Iterator<PipeInput> i = pipe.getInputs().values().iterator(); i.hasNext();) {
             PipeInput input = i.next();
             i.remove();
@@ -300,7 +417,7 @@ public class PipeManager {
         }
         for (PipeInput input : pipe.getInputs().values()) {
             pipeCache.put(input.getLocation(), pipe);
-            pipePartCache.put(input.getLocation(), input);
+            cachePipePart(input.getLocation(), input);
             if (!input.getHolder().getInventory().isEmpty()) {
                 ItemMoveScheduler.getInstance().add(input.getLocation());
             }
@@ -310,11 +427,79 @@ public class PipeManager {
         }
         for (PipeOutput output : pipe.getOutputs().values()) {
             addToMultiCache(output.getLocation(), pipe);
-            pipePartCache.put(output.getLocation(), output);
+            cachePipePart(output.getLocation(), output);
         }
         for (ChunkLoader chunkLoader : pipe.getChunkLoaders().values()) {
             addToMultiCache(chunkLoader.getLocation(), pipe);
-            pipePartCache.put(chunkLoader.getLocation(), chunkLoader);
+            cachePipePart(chunkLoader.getLocation(), chunkLoader);
+        }
+        trackChunks(pipe);
+        PipeIndex.getInstance().put(pipe);
+    }
+
+    /**
+     * Register a pipe for all of its chunks and check which of them are loaded.
+     * Afterwards chunk loads and unloads keep the state of the pipe up to date.
+     *
+     * @param pipe the pipe
+     */
+    private void trackChunks(Pipe pipe) {
+        World world = Bukkit.getWorld(pipe.getWorldName());
+        Long2ObjectMap<Set<Pipe>> chunks = chunkPipes.computeIfAbsent(pipe.getWorldName(), w -> new Long2ObjectOpenHashMap<>());
+        for (long chunkKey : pipe.getChunks()) {
+            chunks.computeIfAbsent(chunkKey, k -> Collections.newSetFromMap(new IdentityHashMap<>())).add(pipe);
+            pipe.setChunkLoaded(chunkKey, world != null && world.isChunkLoaded((int) chunkKey, (int) (chunkKey >> 32)));
+        }
+    }
+
+    private void untrackChunks(Pipe pipe) {
+        Long2ObjectMap<Set<Pipe>> chunks = chunkPipes.get(pipe.getWorldName());
+        if (chunks == null) {
+            return;
+        }
+        for (long chunkKey : pipe.getChunks()) {
+            Set<Pipe> pipes = chunks.get(chunkKey);
+            if (pipes != null) {
+                pipes.remove(pipe);
+                if (pipes.isEmpty()) {
+                    chunks.remove(chunkKey);
+                }
+            }
+        }
+        if (chunks.isEmpty()) {
+            chunkPipes.remove(pipe.getWorldName());
+        }
+    }
+
+    /**
+     * Calculate the chunks of a pipe again after its blocks or parts changed
+     *
+     * @param pipe the pipe
+     */
+    private void updateChunks(Pipe pipe) {
+        untrackChunks(pipe);
+        pipe.invalidateChunks();
+        // only cached pipes get updated on chunk loads
+        if (!pipe.getInputs().isEmpty() && pipeCache.getIfPresent(pipe.getInputs().keySet().iterator().next()) == pipe) {
+            trackChunks(pipe);
+        }
+    }
+
+    /**
+     * Update the loaded state of all cached pipes in a chunk
+     *
+     * @param chunk  the chunk
+     * @param loaded whether or not the chunk is loaded now
+     */
+    public void setChunkLoaded(Chunk chunk, boolean loaded) {
+        Long2ObjectMap<Set<Pipe>> chunks = chunkPipes.get(chunk.getWorld().getName());
+        if (chunks != null) {
+            Set<Pipe> pipes = chunks.get(chunk.getChunkKey());
+            if (pipes != null) {
+                for (Pipe pipe : pipes) {
+                    pipe.setChunkLoaded(chunk.getChunkKey(), loaded);
+                }
+            }
         }
     }
 
@@ -337,12 +522,15 @@ public class PipeManager {
                 throw new TooManyOutputsException(pipePart.getLocation());
             }
             pipe.getOutputs().put(pipePart.getLocation(), (PipeOutput) pipePart);
+            pipe.clearRoutes();
             addToMultiCache(pipePart.getLocation(), pipe);
         } else if (pipePart instanceof ChunkLoader) {
             pipe.getChunkLoaders().put(pipePart.getLocation(), (ChunkLoader) pipePart);
             addToMultiCache(pipePart.getLocation(), pipe);
         }
-        pipePartCache.put(pipePart.getLocation(), pipePart);
+        cachePipePart(pipePart.getLocation(), pipePart);
+        updateChunks(pipe);
+        PipeIndex.getInstance().put(pipe);
     }
 
     /**
@@ -352,11 +540,13 @@ public class PipeManager {
      * @param pipePart the part to remove
      */
     public void removePart(Pipe pipe, AbstractPipePart pipePart) {
+        PipeIndex.getInstance().remove(pipe);
         if (pipePart instanceof PipeInput) {
             pipe.getInputs().remove(pipePart.getLocation());
             pipeCache.invalidate(pipePart.getLocation());
         } else if (pipePart instanceof PipeOutput) {
             pipe.getOutputs().remove(pipePart.getLocation());
+            pipe.clearRoutes();
             if (pipe.getOutputs().isEmpty()) {
                 removePipe(pipe);
             } else {
@@ -367,11 +557,12 @@ public class PipeManager {
             removeFromMultiCache(pipePart.getLocation(), pipe);
         }
         pipePartCache.remove(pipePart.getLocation(), pipePart);
+        updateChunks(pipe);
+        PipeIndex.getInstance().put(pipe);
     }
 
     private void addToMultiCache(SimpleLocation location, Pipe pipe) {
-        multiCache.putIfAbsent(location, Collections.newSetFromMap(new WeakHashMap<>()));
-        multiCache.get(location).add(pipe);
+        multiCache.computeIfAbsent(location, l -> Collections.newSetFromMap(new WeakHashMap<>())).add(pipe);
     }
 
     private void removeFromMultiCache(SimpleLocation location, Pipe pipe) {
@@ -400,6 +591,109 @@ public class PipeManager {
         }
         pipe.getPipeBlocks().add(location);
         singleCache.put(location, pipe);
+        updateChunks(pipe);
+        PipeIndex.getInstance().addBlock(pipe, location);
+    }
+
+    /**
+     * Remove glass blocks from a pipe. The remaining blocks are searched for the parts that are still connected
+     * to each other in memory and each of them that still has inputs and outputs becomes its own pipe.
+     *
+     * @param pipe      the pipe to remove the blocks from
+     * @param locations the locations of the removed blocks
+     * @return the pipes that are left over, might be empty
+     */
+    public Set<Pipe> removeBlocks(Pipe pipe, Collection<SimpleLocation> locations) {
+        try (MCTiming t = TIMINGS_SPLIT.startTiming()) {
+            return splitPipe(pipe, locations);
+        }
+    }
+
+    private Set<Pipe> splitPipe(Pipe pipe, Collection<SimpleLocation> locations) {
+        LinkedHashSet<SimpleLocation> remaining = new LinkedHashSet<>(pipe.getPipeBlocks());
+        remaining.removeAll(locations);
+
+        Set<SimpleLocation> seeds = new LinkedHashSet<>();
+        for (SimpleLocation location : locations) {
+            for (BlockFace face : PipesUtil.BLOCK_FACES) {
+                SimpleLocation relative = location.getRelative(face);
+                if (remaining.contains(relative)) {
+                    seeds.add(relative);
+                }
+            }
+        }
+
+        Collection<PipeInput> inputs = new ArrayList<>(pipe.getInputs().values());
+        Collection<PipeOutput> outputs = new ArrayList<>(pipe.getOutputs().values());
+        Collection<ChunkLoader> chunkLoaders = new ArrayList<>(pipe.getChunkLoaders().values());
+        removePipe(pipe);
+
+        Set<Pipe> pipes = new LinkedHashSet<>();
+        Set<SimpleLocation> visited = new HashSet<>();
+        for (SimpleLocation seed : seeds) {
+            if (visited.contains(seed)) {
+                continue;
+            }
+            LinkedHashSet<SimpleLocation> component = new LinkedHashSet<>();
+            Queue<SimpleLocation> queue = new ArrayDeque<>();
+            queue.add(seed);
+            visited.add(seed);
+            while (!queue.isEmpty()) {
+                SimpleLocation location = queue.remove();
+                component.add(location);
+                for (BlockFace face : PipesUtil.BLOCK_FACES) {
+                    SimpleLocation relative = location.getRelative(face);
+                    if (remaining.contains(relative) && visited.add(relative)) {
+                        queue.add(relative);
+                    }
+                }
+            }
+
+            Pipe split = createSplitPipe(pipe, component, inputs, outputs, chunkLoaders);
+            if (split != null) {
+                addPipe(split);
+                pipes.add(split);
+            }
+        }
+        return pipes;
+    }
+
+    private Pipe createSplitPipe(Pipe pipe, LinkedHashSet<SimpleLocation> blocks, Collection<PipeInput> inputs,
+                                 Collection<PipeOutput> outputs, Collection<ChunkLoader> chunkLoaders) {
+        LinkedHashMap<SimpleLocation, PipeInput> splitInputs = new LinkedHashMap<>();
+        for (PipeInput input : inputs) {
+            if (blocks.contains(input.getTargetLocation())) {
+                splitInputs.put(input.getLocation(), input);
+            }
+        }
+        LinkedHashMap<SimpleLocation, PipeOutput> splitOutputs = new LinkedHashMap<>();
+        for (PipeOutput output : outputs) {
+            if (isAttached(output.getLocation(), blocks) && !splitInputs.containsKey(output.getTargetLocation())) {
+                splitOutputs.put(output.getLocation(), output);
+            }
+        }
+        if (splitInputs.isEmpty() || splitOutputs.isEmpty()) {
+            return null;
+        }
+        LinkedHashMap<SimpleLocation, ChunkLoader> splitChunkLoaders = new LinkedHashMap<>();
+        for (ChunkLoader chunkLoader : chunkLoaders) {
+            if (isAttached(chunkLoader.getLocation(), blocks)) {
+                splitChunkLoaders.put(chunkLoader.getLocation(), chunkLoader);
+            }
+        }
+        Pipe split = new Pipe(splitInputs, splitOutputs, splitChunkLoaders, blocks, pipe.getType());
+        split.setLastTransfer(pipe.getLastTransfer());
+        split.setTransfers(pipe.getTransfers());
+        return split;
+    }
+
+    private boolean isAttached(SimpleLocation location, Set<SimpleLocation> blocks) {
+        for (BlockFace face : PipesUtil.BLOCK_FACES) {
+            if (blocks.contains(location.getRelative(face))) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -457,9 +751,42 @@ public class PipeManager {
      * @throws TooManyOutputsException when the pipe has too many outputs
      */
     public Pipe isPipe(Block startingPoint) throws ChunkNotLoadedException, TooManyOutputsException, PipeTooLongException {
+        SimpleLocation start = new SimpleLocation(startingPoint.getWorld().getName(), startingPoint.getBlockKey());
+        PipeSearchEvent event = PipeSearchEvent.start(start);
+        LocationException failure = InvalidPipeCache.getInstance().get(start);
+        if (failure != null) {
+            // nothing changed since the last search failed, it would fail again
+            if (event != null) {
+                event.finish(0, "cached " + failure.getClass().getSimpleName());
+            }
+            if (failure instanceof ChunkNotLoadedException) {
+                throw (ChunkNotLoadedException) failure;
+            } else if (failure instanceof TooManyOutputsException) {
+                throw (TooManyOutputsException) failure;
+            } else if (failure instanceof PipeTooLongException) {
+                throw (PipeTooLongException) failure;
+            }
+        }
+        LongOpenHashSet found = new LongOpenHashSet();
+        String result = "error";
+        try (MCTiming t = TIMINGS_SEARCH.startTiming()) {
+            Pipe pipe = searchPipe(startingPoint, found);
+            result = pipe != null ? "found" : "none";
+            return pipe;
+        } catch (ChunkNotLoadedException | TooManyOutputsException | PipeTooLongException e) {
+            result = e.getClass().getSimpleName();
+            InvalidPipeCache.getInstance().put(start, found, e);
+            throw e;
+        } finally {
+            if (event != null) {
+                event.finish(found.size(), result);
+            }
+        }
+    }
 
-        Queue<SimpleLocation> queue = new LinkedList<>();
-        Set<SimpleLocation> found = new LinkedHashSet<>();
+    private Pipe searchPipe(Block startingPoint, LongOpenHashSet found) throws ChunkNotLoadedException, TooManyOutputsException, PipeTooLongException {
+
+        LongArrayFIFOQueue queue = new LongArrayFIFOQueue();
 
         LinkedHashMap<SimpleLocation, PipeInput> inputs = new LinkedHashMap<>();
         LinkedHashMap<SimpleLocation, PipeOutput> outputs = new LinkedHashMap<>();
@@ -469,81 +796,85 @@ public class PipeManager {
         Material type = null;
 
         World world = startingPoint.getWorld();
+        String worldName = world.getName();
 
-        queue.add(new SimpleLocation(
-                startingPoint.getWorld().getName(),
-                startingPoint.getX(),
-                startingPoint.getY(),
-                startingPoint.getZ()));
+        queue.enqueue(startingPoint.getBlockKey());
 
         while (!queue.isEmpty()) {
-            SimpleLocation location = queue.remove();
-            if (!found.contains(location)) {
-                if (!world.isChunkLoaded(location.getX() >> 4, location.getZ() >> 4)
-                        && (chunkLoaders.size() == 0)) {
-                    throw new ChunkNotLoadedException(location);
+            long key = queue.dequeueLong();
+            // blocks that aren't part of the pipe can't become part of it later on, no need to check them twice
+            if (!found.add(key)) {
+                continue;
+            }
+            int x = Block.getBlockKeyX(key);
+            int y = Block.getBlockKeyY(key);
+            int z = Block.getBlockKeyZ(key);
+            if (!world.isChunkLoaded(x >> 4, z >> 4)) {
+                if (!chunkLoaders.isEmpty()) {
+                    // load it in the background instead of blocking, the pipe gets searched again once it's loaded
+                    ChunkTicketManager.getInstance().request(world, Chunk.getChunkKey(x >> 4, z >> 4));
                 }
-                Block block = world.getBlockAt(location.getX(), location.getY(), location.getZ());
-                if (MaterialTags.STAINED_GLASS.isTagged(block)) {
-                    if (type == null) {
-                        type = block.getType();
+                throw new ChunkNotLoadedException(new SimpleLocation(worldName, x, y, z));
+            }
+            Block block = world.getBlockAt(x, y, z);
+            if (MaterialTags.STAINED_GLASS.isTagged(block)) {
+                if (type == null) {
+                    type = block.getType();
+                }
+                if (block.getType() == type) {
+                    if (PipesConfig.getMaxPipeLength() > 0 && pipeBlocks.size() >= PipesConfig.getMaxPipeLength()) {
+                        throw new PipeTooLongException(new SimpleLocation(worldName, x, y, z));
                     }
-                    if (block.getType() == type) {
-                        if (PipesConfig.getMaxPipeLength() > 0 && pipeBlocks.size() >= PipesConfig.getMaxPipeLength()) {
-                            throw new PipeTooLongException(location);
-                        }
-                        pipeBlocks.add(location);
-                        found.add(location);
-                        for (BlockFace face : PipesUtil.BLOCK_FACES) {
-                            queue.add(location.getRelative(face));
+                    pipeBlocks.add(new SimpleLocation(worldName, x, y, z));
+                    for (BlockFace face : PipesUtil.BLOCK_FACES) {
+                        long relative = SimpleLocation.getRelative(key, face);
+                        if (!found.contains(relative)) {
+                            queue.enqueue(relative);
                         }
                     }
-                } else {
-                    AbstractPipePart pipesPart = getPipePart(block);
-                    if (pipesPart != null) {
-                        switch (pipesPart.getType()) {
-                            case PIPE_INPUT:
-                                PipeInput pipeInput = (PipeInput) pipesPart;
-                                Block relativeBlock = block.getRelative(pipeInput.getFacing());
-                                if (type == null && MaterialTags.STAINED_GLASS.isTagged(relativeBlock)) {
-                                    type = relativeBlock.getType();
-                                }
-                                if (relativeBlock.getType() == type) {
-                                    inputs.put(pipeInput.getLocation(), pipeInput);
-                                    found.add(location);
-                                    queue.add(pipeInput.getTargetLocation());
-                                }
-                                break;
-                            case PIPE_OUTPUT:
-                                PipeOutput pipeOutput = (PipeOutput) pipesPart;
-                                if (PipesConfig.getMaxPipeOutputs() > 0 && outputs.size() >= PipesConfig.getMaxPipeOutputs()) {
-                                    throw new TooManyOutputsException(location);
-                                }
-                                outputs.put(pipeOutput.getLocation(), pipeOutput);
-                                if (found.isEmpty()) {
-                                    for (BlockFace face : PipesUtil.BLOCK_FACES) {
-                                        if (face != pipeOutput.getFacing()) {
-                                            Material relative = block.getRelative(face).getType();
-                                            if (relative == type || (type == null & MaterialTags.STAINED_GLASS.isTagged(relative))) {
-                                                queue.add(location.getRelative(face));
-                                                break;
-                                            }
+                }
+            } else {
+                AbstractPipePart pipesPart = getPipePart(block);
+                if (pipesPart != null) {
+                    switch (pipesPart.getType()) {
+                        case PIPE_INPUT:
+                            PipeInput pipeInput = (PipeInput) pipesPart;
+                            Block relativeBlock = block.getRelative(pipeInput.getFacing());
+                            if (type == null && MaterialTags.STAINED_GLASS.isTagged(relativeBlock)) {
+                                type = relativeBlock.getType();
+                            }
+                            if (relativeBlock.getType() == type) {
+                                inputs.put(pipeInput.getLocation(), pipeInput);
+                                queue.enqueue(pipeInput.getTargetLocation().getBlockKey());
+                            }
+                            break;
+                        case PIPE_OUTPUT:
+                            PipeOutput pipeOutput = (PipeOutput) pipesPart;
+                            if (PipesConfig.getMaxPipeOutputs() > 0 && outputs.size() >= PipesConfig.getMaxPipeOutputs()) {
+                                throw new TooManyOutputsException(pipeOutput.getLocation());
+                            }
+                            outputs.put(pipeOutput.getLocation(), pipeOutput);
+                            if (found.size() == 1) {
+                                for (BlockFace face : PipesUtil.BLOCK_FACES) {
+                                    if (face != pipeOutput.getFacing()) {
+                                        Material relative = block.getRelative(face).getType();
+                                        if (relative == type || (type == null & MaterialTags.STAINED_GLASS.isTagged(relative))) {
+                                            queue.enqueue(SimpleLocation.getRelative(key, face));
+                                            break;
                                         }
                                     }
                                 }
-                                found.add(location);
-                                Block relativeToOutput = pipeOutput.getTargetLocation().getBlock();
-                                if (relativeToOutput.getState(false) instanceof InventoryHolder) {
-                                    found.add(new SimpleLocation(relativeToOutput.getLocation()));
-                                } else if (relativeToOutput.getType() == Material.COMPOSTER) {
-                                    found.add(new SimpleLocation(relativeToOutput.getLocation()));
-                                }
-                                break;
-                            case CHUNK_LOADER:
-                                chunkLoaders.put(pipesPart.getLocation(), (ChunkLoader) pipesPart);
-                                found.add(location);
-                                break;
-                        }
+                            }
+                            Block relativeToOutput = pipeOutput.getTargetLocation().getBlock();
+                            if (relativeToOutput.getState(false) instanceof InventoryHolder) {
+                                found.add(relativeToOutput.getBlockKey());
+                            } else if (relativeToOutput.getType() == Material.COMPOSTER) {
+                                found.add(relativeToOutput.getBlockKey());
+                            }
+                            break;
+                        case CHUNK_LOADER:
+                            chunkLoaders.put(pipesPart.getLocation(), (ChunkLoader) pipesPart);
+                            break;
                     }
                 }
             }
@@ -581,40 +912,106 @@ public class PipeManager {
             state.update();
         }
         AbstractPipePart part = PipesUtil.convertToPipePart(state, item);
-        pipePartCache.put(new SimpleLocation(block.getLocation()), part);
-        return part;
+        return cachePipePart(part.getLocation(), part);
     }
 
     /**
-     * Get the pipes part. Will try to lookup the part in the cache first, if not found it will create a new one.
+     * Get the pipes part. Will try to lookup the part in the cache first, if not found it will create a new one
+     * and remember it for the next lookup.
      * @param block the block to get the part for
      * @return the pipespart or null if the block isn't one
      */
     public AbstractPipePart getPipePart(Block block) {
+        SimpleLocation location = new SimpleLocation(block.getLocation());
+        AbstractPipePart part = getCachedPipePart(location, block.getType());
+        if (part != null) {
+            return part;
+        }
         PipesItem type = PipesUtil.getPipesItem(block);
         if (type == null) {
             return null;
         }
-        return pipePartCache.getOrDefault(
-                new SimpleLocation(block.getLocation()),
-                PipesUtil.convertToPipePart(block.getState(false), type)
-        );
+        return cachePipePart(location, PipesUtil.convertToPipePart(block.getState(false), type));
     }
 
     /**
-     * Get the pipes part. Will try to lookup the part in the cache first, if not found it will create a new one.
+     * Get the pipes part. Will try to lookup the part in the cache first, if not found it will create a new one
+     * and remember it for the next lookup.
      * @param state the block's state to get the part for
      * @return the pipespart or null if the block isn't one
      */
     public AbstractPipePart getPipePart(BlockState state) {
+        SimpleLocation location = new SimpleLocation(state.getLocation());
+        AbstractPipePart part = getCachedPipePart(location, state.getType());
+        if (part != null) {
+            return part;
+        }
         PipesItem type = PipesUtil.getPipesItem(state);
         if (type == null) {
             return null;
         }
-        return pipePartCache.getOrDefault(
-                new SimpleLocation(state.getLocation()),
-                PipesUtil.convertToPipePart(state, type)
-        );
+        return cachePipePart(location, PipesUtil.convertToPipePart(state, type));
+    }
+
+    /**
+     * Get a cached part if the block at its location still has the part's material
+     *
+     * @param location the location of the part
+     * @param material the current material of the block
+     * @return the cached part or null if there is none or it is outdated
+     */
+    private AbstractPipePart getCachedPipePart(SimpleLocation location, Material material) {
+        AbstractPipePart part = pipePartCache.get(location);
+        if (part != null && part.getType().getMaterial() != material) {
+            // the block got replaced without us noticing, forget the outdated part
+            pipePartCache.remove(location, part);
+            return null;
+        }
+        return part;
+    }
+
+    /**
+     * Remember a part for the next lookup. It's also added to the part index as parts can appear
+     * without us noticing, e.g. through WorldEdit, commands or converted block storage.
+     *
+     * @param location the location of the part
+     * @param part     the part
+     * @return the part
+     */
+    private AbstractPipePart cachePipePart(SimpleLocation location, AbstractPipePart part) {
+        if (part != null) {
+            pipePartCache.put(location, part);
+            PartIndex.getInstance().add(location);
+        }
+        return part;
+    }
+
+    /**
+     * Forget a cached part, e.g. because its block was removed
+     *
+     * @param location the location of the part
+     */
+    public void removePipePart(SimpleLocation location) {
+        pipePartCache.remove(location);
+    }
+
+    /**
+     * Forget the parts of a chunk that gets unloaded which aren't used by any cached pipe
+     *
+     * @param chunk the chunk
+     */
+    public void unloadParts(Chunk chunk) {
+        LongSet parts = PartIndex.getInstance().getParts(chunk);
+        if (parts == null) {
+            return;
+        }
+        String worldName = chunk.getWorld().getName();
+        for (long key : parts) {
+            SimpleLocation location = new SimpleLocation(worldName, Block.getBlockKeyX(key), Block.getBlockKeyY(key), Block.getBlockKeyZ(key));
+            if (pipeCache.getIfPresent(location) == null && !multiCache.containsKey(location)) {
+                pipePartCache.remove(location);
+            }
+        }
     }
 
     /**
@@ -636,6 +1033,7 @@ public class PipeManager {
             }
 
             if (pipe.getInputs().isEmpty() || notification.getCause() != RemovalCause.EXPLICIT) {
+                untrackChunks(pipe);
                 for (PipeInput input : pipe.getInputs().values()) {
                     pipeCache.invalidate(input.getLocation());
                     pipePartCache.remove(input.getLocation(), input);
@@ -0,0 +1,181 @@
+package io.github.apfelcreme.Pipes.Manager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+public class TimingWheel<T> {
+
+    /**
+     * the first entry of every slot
+     */
+    private final Entry<T>[] heads;
+
+    /**
+     * the last entry of every slot
+     */
+    private final Entry<T>[] tails;
+
+    private final int mask;
+
+    /**
+     * the entries by their value
+     */
+    private final Map<T, Entry<T>> entries = new HashMap<>();
+
+    /**
+     * A hashed timing wheel. Values are put into the slot of the tick that they are due in,
+     * values that are due later than one revolution stay in their slot until their tick is reached.
+     * The ticks have to be polled one after another for this to work.
+     *
+     * @param size the minimum number of slots, gets rounded up to the next power of two
+     */
+    public TimingWheel(int size) {
+        int slots = Integer.highestOneBit(Math.max(size, 2) - 1) << 1;
+        heads = new Entry[slots];
+        tails = new Entry[slots];
+        mask = slots - 1;
+    }
+
+    /**
+     * Schedule a value for a tick. If it was already scheduled it gets moved to the new tick.
+     *
+     * @param value the value
+     * @param tick  the tick that the value is due in
+     */
+    public void schedule(T value, long tick) {
+        Entry<T> entry = entries.get(value);
+        if (entry == null) {
+            entry = new Entry<>(value);
+            entries.put(value, entry);
+        } else {
+            unlink(entry);
+        }
+        entry.tick = tick;
+        link(entry);
+    }
+
+    /**
+     * Remove a value from the wheel
+     *
+     * @param value the value
+     * @return <code>true</code> if the value was scheduled
+     */
+    public boolean cancel(T value) {
+        Entry<T> entry = entries.remove(value);
+        if (entry == null) {
+            return false;
+        }
+        unlink(entry);
+        return true;
+    }
+
+    /**
+     * Check whether or not a value is scheduled
+     *
+     * @param value the value
+     * @return <code>true</code> if the value is scheduled
+     */
+    public boolean contains(T value) {
+        return entries.containsKey(value);
+    }
+
+    /**
+     * Remove and return all values that are due in a tick
+     *
+     * @param tick the tick
+     * @return the due values in the order they were scheduled in
+     */
+    public List<T> poll(long tick) {
+        List<T> due = new ArrayList<>();
+        Entry<T> entry = heads[(int) (tick & mask)];
+        while (entry != null) {
+            Entry<T> next = entry.next;
+            if (entry.tick <= tick) {
+                unlink(entry);
+                entries.remove(entry.value);
+                due.add(entry.value);
+            }
+            entry = next;
+        }
+        return due;
+    }
+
+    /**
+     * Get the number of scheduled values
+     *
+     * @return the number of scheduled values
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Remove all values
+     */
+    public void clear() {
+        entries.clear();
+        for (int i = 0; i < heads.length; i++) {
+            heads[i] = null;
+            tails[i] = null;
+        }
+    }
+
+    private void link(Entry<T> entry) {
+        int slot = (int) (entry.tick & mask);
+        entry.prev = tails[slot];
+        entry.next = null;
+        if (tails[slot] != null) {
+            tails[slot].next = entry;
+        } else {
+            heads[slot] = entry;
+        }
+        tails[slot] = entry;
+    }
+
+    private void unlink(Entry<T> entry) {
+        int slot = (int) (entry.tick & mask);
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        } else {
+            heads[slot] = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        } else {
+            tails[slot] = entry.prev;
+        }
+        entry.prev = null;
+        entry.next = null;
+    }
+
+    private static class Entry<T> {
+        private final T value;
+        private long tick;
+        private Entry<T> prev;
+        private Entry<T> next;
+
+        private Entry(T value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package io.github.apfelcreme.Pipes.Manager;
+
+import io.github.apfelcreme.Pipes.Pipe.PipeInput;
+import io.github.apfelcreme.Pipes.Pipe.PipeOutput;
+import org.bukkit.Location;
+import org.bukkit.block.Block;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+public class TransferContext {
+
+    /**
+     * the resolved blocks and inventories of the outputs
+     */
+    private final Map<PipeOutput, OutputAccess> outputs = new IdentityHashMap<>();
+
+    /**
+     * the buffered target inventories by their location
+     */
+    private final Map<Location, InventoryBuffer> buffers = new HashMap<>();
+
+    /**
+     * the location of the input inventory, it's never buffered as items get removed from it directly
+     */
+    private final Location inputLocation;
+
+    /**
+     * whether or not the input inventory was changed
+     */
+    private boolean changed = false;
+
+    /**
+     * whether or not an output refused items for a reason that can go away without any of the targets changing
+     */
+    private boolean transientDenial = false;
+
+    /**
+     * constructor
+     *
+     * @param inputLocation the location of the inventory of the input that transfers
+     */
+    public TransferContext(Location inputLocation) {
+        this.inputLocation = inputLocation;
+    }
+
+    /**
+     * Get the resolved blocks and target inventory of an output. They only get looked up once per transfer.
+     *
+     * @param output the output
+     * @return the resolved output
+     */
+    public OutputAccess get(PipeOutput output) {
+        return outputs.computeIfAbsent(output, OutputAccess::new);
+    }
+
+    /**
+     * Check whether or not an output accepts an item with the block state resolved in this context
+     *
+     * @param input  the input that tries to move the item
+     * @param output the output
+     * @param match  the result of the output's filter for the item
+     * @return a result that represents why or why not the item is accepted by this output
+     */
+    public PipeOutput.AcceptResult accepts(PipeInput input, PipeOutput output, PipeOutput.AcceptResult match) {
+        OutputAccess access = get(output);
+        PipeOutput.AcceptResult result = output.accepts(input, match, access.isValid(), access.isPowered());
+        if (result.getType() == PipeOutput.ResultType.DENY_REDSTONE || result.getType() == PipeOutput.ResultType.DENY_INVALID) {
+            transientDenial = true;
+        }
+        return result;
+    }
+
+    /**
+     * Get the buffer for a target inventory. All buffers are written to their inventories on {@link #commit()}
+     *
+     * @param inventory the target inventory
+     * @return the buffer or <code>null</code> if the inventory can't be buffered or is the input's own inventory
+     */
+    public InventoryBuffer getBuffer(Inventory inventory) {
+        if (!InventoryBuffer.supports(inventory)) {
+            return null;
+        }
+        if (inventory.getLocation().equals(inputLocation)) {
+            // an output pointing back into the input, a buffered copy would still contain the removed items
+            return null;
+        }
+        // different handles of the same block share one buffer
+        return buffers.computeIfAbsent(inventory.getLocation(), l -> new InventoryBuffer(inventory));
+    }
+
+    /**
+     * Get the current contents of a target inventory including the buffered moves
+     *
+     * @param inventory the target inventory
+     * @return the contents
+     */
+    public Iterable<ItemStack> getContents(Inventory inventory) {
+        InventoryBuffer buffer = getBuffer(inventory);
+        return buffer != null ? buffer.getContents() : inventory;
+    }
+
+    /**
+     * Write all buffered moves to their inventories
+     */
+    public void commit() {
+        for (InventoryBuffer buffer : buffers.values()) {
+            buffer.commit();
+        }
+    }
+
+    /**
+     * Mark the input inventory as changed
+     */
+    public void setChanged() {
+        changed = true;
+    }
+
+    /**
+     * returns whether or not the input inventory was changed
+     *
+     * @return <code>true</code> if the inventory was changed; <code>false</code> if not
+     */
+    public boolean isChanged() {
+        return changed;
+    }
+
+    /**
+     * Mark that an output refused items for a reason that isn't a full target or its filter,
+     * e.g. a cancelled event or a target without an inventory
+     */
+    public void setTransientDenial() {
+        transientDenial = true;
+    }
+
+    /**
+     * returns whether or not an output refused items for a reason that can go away
+     * without a target or filter change, e.g. redstone or a cancelled event
+     *
+     * @return <code>true</code> if waiting for the targets to change might miss a possible transfer
+     */
+    public boolean hasTransientDenial() {
+        return transientDenial;
+    }
+
+    public static class OutputAccess {
+        private final PipeOutput output;
+        private final boolean valid;
+        private final boolean powered;
+        private Block targetBlock = null;
+        private InventoryHolder targetHolder = null;
+        private boolean targetResolved = false;
+
+        private OutputAccess(PipeOutput output) {
+            this.output = output;
+            Block block = output.getLocation().getBlock();
+            valid = block != null && block.getType() == output.getType().getMaterial();
+            powered = valid && block.isBlockPowered();
+        }
+
+        /**
+         * returns whether or not the output block still exists
+         *
+         * @return <code>true</code> if the output exists; <code>false</code> if not
+         */
+        public boolean isValid() {
+            return valid;
+        }
+
+        /**
+         * returns whether or not the output block is powered by redstone
+         *
+         * @return <code>true</code> if the output is powered; <code>false</code> if not
+         */
+        public boolean isPowered() {
+            return powered;
+        }
+
+        private void resolveTarget() {
+            if (!targetResolved) {
+                targetResolved = true;
+                targetBlock = output.getTargetLocation().getBlock();
+                targetHolder = output.getTargetHolder();
+            }
+        }
+
+        /**
+         * returns the block the output points at
+         *
+         * @return the target block
+         */
+        public Block getTargetBlock() {
+            resolveTarget();
+            return targetBlock;
+        }
+
+        /**
+         * returns the inventory holder the output points at
+         *
+         * @return the target holder or <code>null</code> if there is none
+         */
+        public InventoryHolder getTargetHolder() {
+            resolveTarget();
+            return targetHolder;
+        }
+
+        /**
+         * returns the inventory the output points at
+         *
+         * @return the target inventory or <code>null</code> if there is none
+         */
+        public Inventory getTargetInventory() {
+            resolveTarget();
+            return targetHolder != null ? targetHolder.getInventory() : null;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package io.github.apfelcreme.Pipes.Manager;
+
+import io.github.apfelcreme.Pipes.Pipe.SimpleLocation;
+import io.github.apfelcreme.Pipes.Pipes;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+public class TransferJournal {
+
+    private static final int FILE_VERSION = 1;
+
+    private static final byte WORLD = 0;
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+
+    /**
+     * the minimum number of appended records before the journal gets compacted
+     */
+    private static final int COMPACT_MIN_RECORDS = 4096;
+
+    /**
+     * the journal file
+     */
+    private final File file;
+
+    /**
+     * writes the appends and compactions in the order they were submitted
+     */
+    private final ExecutorService writer;
+
+    /**
+     * the transfers that the journal on disk contains after all submitted writes are done
+     */
+    private final Set<SimpleLocation> journaled = new LinkedHashSet<>();
+
+    /**
+     * the transfers that were added or removed since the last flush
+     */
+    private final Set<SimpleLocation> dirty = new LinkedHashSet<>();
+
+    /**
+     * the ids of the world names in the journal
+     */
+    private final Map<String, Integer> worldIds = new HashMap<>();
+
+    /**
+     * the number of records that were appended since the last compaction
+     */
+    private int appended = 0;
+
+    /**
+     * constructor
+     *
+     * @param file the journal file
+     */
+    public TransferJournal(File file) {
+        this.file = file;
+        writer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "Pipes Transfer Journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Remember that a transfer was added or removed, it gets written on the next flush
+     *
+     * @param location the location of the input
+     */
+    public void markDirty(SimpleLocation location) {
+        dirty.add(location);
+    }
+
+    /**
+     * Append the changes since the last flush to the journal. A transfer that got added and removed
+     * again in between doesn't cause any record.
+     *
+     * @param isScheduled checks whether or not a transfer is still scheduled
+     */
+    public void flush(Predicate<SimpleLocation> isScheduled) {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int records = 0;
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (SimpleLocation location : dirty) {
+                boolean scheduled = isScheduled.test(location);
+                if (scheduled && journaled.add(location)) {
+                    writeRecord(out, ADD, location);
+                    records++;
+                } else if (!scheduled && journaled.remove(location)) {
+                    writeRecord(out, REMOVE, location);
+                    records++;
+                }
+            }
+        } catch (IOException e) {
+            Pipes.getInstance().getLogger().log(Level.SEVERE, "Could not serialize transfer journal records", e);
+        }
+        dirty.clear();
+        if (records == 0) {
+            return;
+        }
+
+        byte[] data = bytes.toByteArray();
+        writer.execute(() -> {
+            boolean newFile = !file.exists() || file.length() == 0;
+            if (newFile) {
+                file.getParentFile().mkdirs();
+            }
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file, true))) {
+                if (newFile) {
+                    // records without a header in front of them could never be read again
+                    out.writeInt(FILE_VERSION);
+                }
+                out.write(data);
+            } catch (IOException e) {
+                Pipes.getInstance().getLogger().log(Level.SEVERE, "Could not append to " + file.getName(), e);
+            }
+        });
+        appended += records;
+        if (appended > Math.max(COMPACT_MIN_RECORDS, journaled.size() * 2)) {
+            compact();
+        }
+    }
+
+    private void writeRecord(DataOutputStream out, byte type, SimpleLocation location) throws IOException {
+        Integer worldId = worldIds.get(location.getWorldName());
+        if (worldId == null) {
+            worldId = worldIds.size();
+            worldIds.put(location.getWorldName(), worldId);
+            writeWorld(out, location.getWorldName(), worldId);
+        }
+        out.writeByte(type);
+        out.writeShort(worldId);
+        out.writeInt(location.getX());
+        out.writeInt(location.getY());
+        out.writeInt(location.getZ());
+    }
+
+    private void writeWorld(DataOutputStream out, String worldName, int worldId) throws IOException {
+        out.writeByte(WORLD);
+        out.writeShort(worldId);
+        out.writeUTF(worldName);
+    }
+
+    /**
+     * Rewrite the journal off the main thread so that it only contains the currently scheduled transfers
+     */
+    public void compact() {
+        List<SimpleLocation> transfers = new ArrayList<>(journaled);
+        Map<String, Integer> worlds = new HashMap<>(worldIds);
+        appended = 0;
+        writer.execute(() -> {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeInt(FILE_VERSION);
+                for (Map.Entry<String, Integer> world : worlds.entrySet()) {
+                    writeWorld(out, world.getKey(), world.getValue());
+                }
+                for (SimpleLocation location : transfers) {
+                    out.writeByte(ADD);
+                    out.writeShort(worlds.get(location.getWorldName()));
+                    out.writeInt(location.getX());
+                    out.writeInt(location.getY());
+                    out.writeInt(location.getZ());
+                }
+                file.getParentFile().mkdirs();
+                File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+                Files.write(temp.toPath(), bytes.toByteArray());
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Pipes.getInstance().getLogger().log(Level.SEVERE, "Could not compact " + file.getName(), e);
+            }
+        });
+    }
+
+    /**
+     * Run a task after all writes that were submitted until now are done
+     *
+     * @param task the task to run off the main thread
+     */
+    public void afterWrites(Runnable task) {
+        writer.execute(task);
+    }
+
+    /**
+     * Replay the journal. A record that was cut off by a crash ends the replay.
+     *
+     * @return the transfers that were scheduled when the journal was written last
+     */
+    public Set<SimpleLocation> load() {
+        journaled.clear();
+        worldIds.clear();
+        if (file.exists()) {
+            read();
+        }
+        for (SimpleLocation location : journaled) {
+            worldIds.putIfAbsent(location.getWorldName(), worldIds.size());
+        }
+        // start with a clean file that has a header and that the new ids apply to,
+        // this also replaces a missing, unknown or broken journal before anything gets appended
+        compact();
+        return new LinkedHashSet<>(journaled);
+    }
+
+    private void read() {
+        Map<Integer, String> worlds = new HashMap<>();
+        int unknownVersion = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int version = in.readInt();
+            if (version != FILE_VERSION) {
+                unknownVersion = version;
+            }
+            while (unknownVersion == 0) {
+                byte type = in.readByte();
+                int worldId = in.readUnsignedShort();
+                if (type == WORLD) {
+                    worlds.put(worldId, in.readUTF());
+                    continue;
+                }
+                String worldName = worlds.get(worldId);
+                if (worldName == null) {
+                    throw new IOException("Record of unknown world id " + worldId);
+                }
+                SimpleLocation location = new SimpleLocation(worldName, in.readInt(), in.readInt(), in.readInt());
+                if (type == ADD) {
+                    journaled.add(location);
+                } else if (type == REMOVE) {
+                    journaled.remove(location);
+                } else {
+                    throw new IOException("Unknown record type " + type);
+                }
+            }
+        } catch (EOFException ignored) {
+            // end of the journal or a record that was only partially written
+        } catch (IOException e) {
+            Pipes.getInstance().getLogger().log(Level.SEVERE, "Could not fully read " + file.getName() + ", only the transfers up to the broken record were restored", e);
+        }
+        if (unknownVersion != 0) {
+            // probably written by a newer version, keep it instead of replacing it with an empty journal
+            File moved = new File(file.getParentFile(), file.getName() + ".v" + unknownVersion);
+            Pipes.getInstance().getLogger().log(Level.WARNING, "Unknown transfer journal version " + unknownVersion + " in " + file.getName() + ", moving it to " + moved.getName() + ".");
+            try {
+                Files.move(file.toPath(), moved.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                Pipes.getInstance().getLogger().log(Level.SEVERE, "Could not move " + file.getName() + " to " + moved.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Write the last changes and wait for all writes to finish
+     *
+     * @param isScheduled checks whether or not a transfer is still scheduled
+     */
+    public void close(Predicate<SimpleLocation> isScheduled) {
+        flush(isScheduled);
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                Pipes.getInstance().getLogger().log(Level.WARNING, "Transfer journal writes took too long, some might be lost.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
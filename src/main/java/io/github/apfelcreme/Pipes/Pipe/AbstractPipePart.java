@@ -6,6 +6,7 @@ import de.themoep.inventorygui.GuiStateElement;
 import de.themoep.inventorygui.GuiStorageElement;
 import de.themoep.inventorygui.InventoryGui;
 import de.themoep.inventorygui.StaticGuiElement;
+import io.github.apfelcreme.Pipes.Manager.PartSaveQueue;
 import io.github.apfelcreme.Pipes.Pipes;
 import io.github.apfelcreme.Pipes.PipesConfig;
 import io.github.apfelcreme.Pipes.PipesItem;
@@ -41,10 +42,9 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.logging.Level;
 import java.util.stream.Collectors;
 
 /*
@@ -71,11 +71,25 @@ public abstract class AbstractPipePart {
 
     private final PipesItem type;
     private final SimpleLocation location;
-    private Map<Option<?>, Value<?>> options = new HashMap<>();
+
+    /**
+     * the values that were set, indexed by {@link Option#getIndex()}. <code>null</code> means the default value is used
+     */
+    private final Value<?>[] values;
+
+    /**
+     * the current values of all boolean options, one bit per option index
+     */
+    private long flags = 0;
 
     protected AbstractPipePart(PipesItem type, Location location) {
         this.type = type;
         this.location = new SimpleLocation(location);
+        Option<?>[] available = getOptions();
+        values = new Value<?>[available.length];
+        for (Option<?> option : available) {
+            updateFlag(option, option.getDefaultValue());
+        }
         loadOptions();
     }
     
@@ -132,13 +146,9 @@ public abstract class AbstractPipePart {
      * @return              The value of the option or <code>null</code> if it wasn't set
      */
     public <T> Value<T> getValue(Option<T> option, Value<T> defaultValue) {
-        Value<?> value = options.getOrDefault(option, defaultValue);
-        if (!option.isValid(value)) {
-            options.remove(option);
-            Pipes.getInstance().getLogger().log(Level.SEVERE, "Removed stored value " + value + " for option " + option + " from part at " + getLocation() + " because it's not compatible with value type <" + option.getValueType().getSimpleName() + ">!");
-            return null;
-        }
-        return (Value<T>) value;
+        // values only get in here through setOption which already validated them
+        Value<?> value = option.getIndex() < values.length ? values[option.getIndex()] : null;
+        return value != null ? (Value<T>) value : defaultValue;
     }
 
     /**
@@ -163,7 +173,26 @@ public abstract class AbstractPipePart {
     }
 
     /**
-     * Set an option of this output. This also saves the options to the block
+     * Get the value of a boolean option of this pipe part. This only reads a bit and should be used on hot paths.
+     * @param option    The option to get
+     * @return          The value of the option or its default value if it wasn't set
+     */
+    public boolean hasFlag(Option<Boolean> option) {
+        return (flags & (1L << option.getIndex())) != 0;
+    }
+
+    private void updateFlag(Option<?> option, Value<?> value) {
+        if (option.getValueType() == Boolean.class) {
+            if (value != null && Boolean.TRUE.equals(value.getValue())) {
+                flags |= 1L << option.getIndex();
+            } else {
+                flags &= ~(1L << option.getIndex());
+            }
+        }
+    }
+
+    /**
+     * Set an option of this output. This also marks the options to be saved to the block
      * @param <T>       The type of the value
      * @param option    The option to set
      * @param value     The value to set the option to
@@ -178,49 +207,75 @@ public abstract class AbstractPipePart {
      * @param <T>       The type of the value
      * @param option    The option to set
      * @param value     The value to set the option to
-     * @param save      Whether or not to save the option after setting the value
+     * @param save      Whether or not to save the option to the block at the end of the tick
      * @throws IllegalArgumentException When the values type is not compatible with the option
      */
     public <T> void setOption(Option<T> option, Value<T> value, boolean save) {
         if (!option.isValid(value)) {
             throw new IllegalArgumentException("The option " + option + "< " + option.getValueType().getSimpleName() + "> does not accept the value " + value + "!");
         }
-        options.put(option, value);
+        values[option.getIndex()] = value;
+        updateFlag(option, value != null ? value : option.getDefaultValue());
+        onOptionChange(option);
         if (save) {
-            Container holder = getHolder();
-            if (holder != null) {
-                PersistentDataContainer optionsContainer = null;
-                if (holder.getPersistentDataContainer().has(OPTIONS_KEY, PersistentDataType.TAG_CONTAINER)) {
-                    optionsContainer = holder.getPersistentDataContainer().get(OPTIONS_KEY, PersistentDataType.TAG_CONTAINER);
-                }
-                if (value == null) {
-                    if (optionsContainer != null) {
-                        optionsContainer.remove(new NamespacedKey(Pipes.getInstance(), option.name()));
-                    }
-                } else {
-                    if (optionsContainer == null) {
-                        optionsContainer = holder.getPersistentDataContainer().getAdapterContext().newPersistentDataContainer();
-                    }
-                    option.set(optionsContainer, value);
-                }
+            PartSaveQueue.getInstance().markDirty(this);
+        }
+    }
 
-                if (optionsContainer != null) {
-                    holder.getPersistentDataContainer().set(OPTIONS_KEY, PersistentDataType.TAG_CONTAINER, optionsContainer);
-                }
+    /**
+     * Check whether or not someone may set an option of this part to a value
+     * @param sender    The sender that wants to set the option
+     * @param option    The option to set
+     * @param value     The value to set the option to
+     * @return <code>true</code> if the sender may set the option to that value; <code>false</code> if not
+     */
+    public boolean canSet(CommandSender sender, Option<?> option, Value<?> value) {
+        return true;
+    }
 
-                holder.update();
-            }
+    /**
+     * Write all options of this part to its block with a single block update
+     */
+    public void saveOptions() {
+        Container holder = getHolder();
+        if (holder == null) {
+            return;
+        }
+        PersistentDataContainer optionsContainer = null;
+        if (holder.getPersistentDataContainer().has(OPTIONS_KEY, PersistentDataType.TAG_CONTAINER)) {
+            optionsContainer = holder.getPersistentDataContainer().get(OPTIONS_KEY, PersistentDataType.TAG_CONTAINER);
+        }
+        if (optionsContainer == null) {
+            optionsContainer = holder.getPersistentDataContainer().getAdapterContext().newPersistentDataContainer();
+        }
+        for (Option<?> option : getOptions()) {
+            saveOption(optionsContainer, option);
         }
+        holder.getPersistentDataContainer().set(OPTIONS_KEY, PersistentDataType.TAG_CONTAINER, optionsContainer);
+        holder.update();
     }
 
+    private <T> void saveOption(PersistentDataContainer container, Option<T> option) {
+        option.set(container, (Value<T>) values[option.getIndex()]);
+    }
+
+    /**
+     * Called after the value of an option was changed
+     * @param option    The option that was changed
+     */
+    protected void onOptionChange(Option<?> option) {}
+
     /**
      * Generate a mapped string of the options to write to the block's name
      * @return  The options as a string, mapped as option=value
      */
     protected String getOptionsString() {
         StringBuilder s = new StringBuilder();
-        for (Map.Entry<Option<?>, Value<?>> option : options.entrySet()) {
-            s.append(',').append(option.getKey().name()).append('=').append(option.getValue().getValue());
+        for (Option<?> option : getOptions()) {
+            Value<?> value = values[option.getIndex()];
+            if (value != null) {
+                s.append(',').append(option.name()).append('=').append(value.getValue());
+            }
         }
         return s.toString();
     }
@@ -242,6 +297,10 @@ public abstract class AbstractPipePart {
 
             gui.addElement(new GuiStorageElement('i', holder.getInventory()));
             gui.setFiller(PipesConfig.getGuiItemStack(getType().toConfigKey() + ".filler"));
+            gui.setCloseAction(close -> {
+                PartSaveQueue.getInstance().flush(this);
+                return false;
+            });
 
             if (getOptions().length > 0) {
                 gui.addElement(new StaticGuiElement('c',
@@ -362,7 +421,8 @@ public abstract class AbstractPipePart {
                         Option<?> option = getAvailableOption(optionName.toUpperCase());
                         Value value = option.parseValue(blockInfo.get(optionName));
                         if (value == null) continue;
-                        setOption(option, value, false);
+                        // move the value from the block info storage to the block once
+                        setOption(option, value, state instanceof PersistentDataHolder);
                     } catch (IllegalArgumentException e) {
                         e.printStackTrace();
                         throw new IllegalArgumentException("Invalid option" + optionName + "=" + blockInfo.get(optionName));
@@ -377,30 +437,51 @@ public abstract class AbstractPipePart {
 
     private boolean loadOptions(PersistentDataHolder dataHolder) {
         if (dataHolder.getPersistentDataContainer().has(OPTIONS_KEY, PersistentDataType.TAG_CONTAINER)) {
-            return loadOptions(dataHolder.getPersistentDataContainer().get(OPTIONS_KEY, PersistentDataType.TAG_CONTAINER));
+            return loadOptions(dataHolder.getPersistentDataContainer().get(OPTIONS_KEY, PersistentDataType.TAG_CONTAINER), null);
         }
-        return loadOptions(dataHolder.getPersistentDataContainer());
+        return loadOptions(dataHolder.getPersistentDataContainer(), null);
     }
 
-    private boolean loadOptions(PersistentDataContainer optionsContainer) {
+    /**
+     * Load the options from a container
+     * @param optionsContainer  The container to load the options from
+     * @param sender            The sender that applies the options, they get checked against what the sender may set
+     *                          and saved to the block. <code>null</code> if they are already stored in the block
+     * @return Whether or not any option was found in the container
+     * @throws IllegalArgumentException if the sender may not set one of the options, none of them get applied then
+     */
+    private boolean loadOptions(PersistentDataContainer optionsContainer, CommandSender sender) throws IllegalArgumentException {
         if (optionsContainer == null) {
             return false;
         }
-        boolean found = false;
+        Map<Option, Value> loaded = new LinkedHashMap<>();
         for (Option<?> option : getOptions()) {
             NamespacedKey key = new NamespacedKey(Pipes.getInstance(), option.name);
             if (optionsContainer.has(key, option.getTagType())) {
                 Object object = optionsContainer.get(key, option.getTagType());
                 try {
                     Value value = option.parseValue(object);
-                    setOption(option, value);
-                    found = true;
+                    if (value == null) {
+                        continue;
+                    }
+                    if (sender != null && !canSet(sender, option, value)) {
+                        throw new IllegalArgumentException(PipesConfig.getText(sender, "error.optionNotAllowed",
+                                PipesConfig.getText(sender, "options." + getType().toConfigKey() + "." + option.toConfigKey() + ".description"),
+                                value.getValue().toString()));
+                    }
+                    loaded.put(option, value);
                 } catch (IllegalArgumentException e) {
+                    if (sender != null) {
+                        throw e;
+                    }
                     e.printStackTrace();
                 }
             }
         }
-        return found;
+        for (Map.Entry<Option, Value> entry : loaded.entrySet()) {
+            setOption(entry.getKey(), entry.getValue(), sender != null);
+        }
+        return !loaded.isEmpty();
     }
     
     /**
@@ -441,7 +522,8 @@ public abstract class AbstractPipePart {
         }
 
         if (meta.getPersistentDataContainer().has(OPTIONS_KEY, PersistentDataType.TAG_CONTAINER)) {
-            loadOptions(meta.getPersistentDataContainer().get(OPTIONS_KEY, PersistentDataType.TAG_CONTAINER));
+            // the options only come from the book, they need to be written to the block
+            loadOptions(meta.getPersistentDataContainer().get(OPTIONS_KEY, PersistentDataType.TAG_CONTAINER), player);
         }
     }
     
@@ -566,6 +648,7 @@ public abstract class AbstractPipePart {
         private final Class<?> valueType;
         private final Value<T>[] possibleValues;
         private final GuiPosition guiPosition;
+        private int index = -1;
 
         /**
          * An option that this pipe part can have
@@ -616,6 +699,24 @@ public abstract class AbstractPipePart {
             return name;
         }
 
+        /**
+         * Get the index of this option in the options of the part type it belongs to
+         * @return  The index, assigned when the option was added to its {@link OptionsList}
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        void setIndex(int index) {
+            if (this.index != -1) {
+                throw new IllegalStateException("The option " + name + " was already added to an options list!");
+            }
+            if (index >= Long.SIZE) {
+                throw new IllegalStateException("A part can't have more than " + Long.SIZE + " options!");
+            }
+            this.index = index;
+        }
+
         /**
          * Get the class of the values that this option accepts
          * @return  The class of the values that this option accepts
@@ -687,7 +788,11 @@ public abstract class AbstractPipePart {
          */
         public GuiStateElement getElement(CommandSender player, AbstractPipePart pipePart) {
             List<GuiStateElement.State> states = new ArrayList<>();
+            Object current = pipePart.getOption(this);
             for (Value v : getPossibleValues()) {
+                if (!v.getValue().equals(current) && !pipePart.canSet(player, this, v)) {
+                    continue;
+                }
                 ItemStack icon = PipesConfig.getGuiItemStack(pipePart.getType().toConfigKey() + "." + toConfigKey().toLowerCase() + "." + v.getValue().toString().toLowerCase());
 
                 states.add(new GuiStateElement.State(
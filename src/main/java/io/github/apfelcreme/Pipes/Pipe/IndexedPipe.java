@@ -0,0 +1,153 @@
+package io.github.apfelcreme.Pipes.Pipe;
+
+import org.bukkit.Chunk;
+import org.bukkit.Material;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+public class IndexedPipe {
+
+    private final String worldName;
+    private final Material type;
+    private final LinkedHashSet<SimpleLocation> inputs;
+    private final LinkedHashSet<SimpleLocation> outputs;
+    private final LinkedHashSet<SimpleLocation> chunkLoaders;
+    private final LinkedHashSet<SimpleLocation> pipeBlocks;
+    private final Set<Long> chunks = new HashSet<>();
+
+    public IndexedPipe(String worldName, Material type, LinkedHashSet<SimpleLocation> inputs, LinkedHashSet<SimpleLocation> outputs,
+                       LinkedHashSet<SimpleLocation> chunkLoaders, LinkedHashSet<SimpleLocation> pipeBlocks) {
+        this.worldName = worldName;
+        this.type = type;
+        this.inputs = inputs;
+        this.outputs = outputs;
+        this.chunkLoaders = chunkLoaders;
+        this.pipeBlocks = pipeBlocks;
+        addChunks(inputs);
+        addChunks(outputs);
+        addChunks(chunkLoaders);
+        addChunks(pipeBlocks);
+    }
+
+    public IndexedPipe(Pipe pipe) {
+        this(pipe.getInputs().keySet().iterator().next().getWorldName(),
+                pipe.getType(),
+                new LinkedHashSet<>(pipe.getInputs().keySet()),
+                new LinkedHashSet<>(pipe.getOutputs().keySet()),
+                new LinkedHashSet<>(pipe.getChunkLoaders().keySet()),
+                new LinkedHashSet<>(pipe.getPipeBlocks()));
+    }
+
+    private void addChunks(Collection<SimpleLocation> locations) {
+        for (SimpleLocation location : locations) {
+            chunks.add(Chunk.getChunkKey(location.getX() >> 4, location.getZ() >> 4));
+        }
+    }
+
+    /**
+     * returns the name of the world this pipe is in
+     *
+     * @return the world name
+     */
+    public String getWorldName() {
+        return worldName;
+    }
+
+    /**
+     * Get the type of this pipe
+     *
+     * @return The type of the blocks this pipe consists of
+     */
+    public Material getType() {
+        return type;
+    }
+
+    /**
+     * returns the locations of the inputs
+     *
+     * @return the locations of the inputs
+     */
+    public LinkedHashSet<SimpleLocation> getInputs() {
+        return inputs;
+    }
+
+    /**
+     * returns the locations of the outputs
+     *
+     * @return the locations of the outputs
+     */
+    public LinkedHashSet<SimpleLocation> getOutputs() {
+        return outputs;
+    }
+
+    /**
+     * returns the locations of the chunk loaders
+     *
+     * @return the locations of the chunk loaders
+     */
+    public LinkedHashSet<SimpleLocation> getChunkLoaders() {
+        return chunkLoaders;
+    }
+
+    /**
+     * returns the locations of the glass-blocks the pipe consists of
+     *
+     * @return the locations of the pipe blocks
+     */
+    public LinkedHashSet<SimpleLocation> getPipeBlocks() {
+        return pipeBlocks;
+    }
+
+    /**
+     * returns the keys of all chunks that this pipe has blocks or parts in
+     *
+     * @return the chunk keys
+     */
+    public Set<Long> getChunks() {
+        return chunks;
+    }
+
+    /**
+     * Add a glass block to this pipe
+     *
+     * @param location the location of the block
+     */
+    public void addBlock(SimpleLocation location) {
+        pipeBlocks.add(location);
+        chunks.add(Chunk.getChunkKey(location.getX() >> 4, location.getZ() >> 4));
+    }
+
+    /**
+     * Check whether or not a location is a block or part of this pipe
+     *
+     * @param location the location to check
+     * @return <code>true</code> if the location belongs to this pipe; <code>false</code> if not
+     */
+    public boolean contains(SimpleLocation location) {
+        return pipeBlocks.contains(location)
+                || inputs.contains(location)
+                || outputs.contains(location)
+                || chunkLoaders.contains(location);
+    }
+}
@@ -0,0 +1,158 @@
+package io.github.apfelcreme.Pipes.Pipe;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+public class LocationMap<V> {
+
+    /**
+     * the maps of the packed block keys per world
+     */
+    private final Map<String, Long2ObjectOpenHashMap<V>> worlds = new HashMap<>();
+
+    /**
+     * the name of the world that was accessed last, most lookups happen in the same world
+     */
+    private String lastWorldName = null;
+
+    /**
+     * the map of the world that was accessed last
+     */
+    private Long2ObjectOpenHashMap<V> lastWorld = null;
+
+    private Long2ObjectOpenHashMap<V> getWorld(String worldName, boolean create) {
+        if (worldName.equals(lastWorldName)) {
+            return lastWorld;
+        }
+        Long2ObjectOpenHashMap<V> world = worlds.get(worldName);
+        if (world == null) {
+            if (!create) {
+                return null;
+            }
+            world = new Long2ObjectOpenHashMap<>();
+            worlds.put(worldName, world);
+        }
+        lastWorldName = worldName;
+        lastWorld = world;
+        return world;
+    }
+
+    /**
+     * Get the value at a location
+     *
+     * @param location the location
+     * @return the value or <code>null</code> if there is none
+     */
+    public V get(SimpleLocation location) {
+        Long2ObjectOpenHashMap<V> world = getWorld(location.getWorldName(), false);
+        return world != null ? world.get(location.getBlockKey()) : null;
+    }
+
+    /**
+     * Get the value at a location
+     *
+     * @param location     the location
+     * @param defaultValue the value to return if there is none
+     * @return the value or the default value if there is none
+     */
+    public V getOrDefault(SimpleLocation location, V defaultValue) {
+        Long2ObjectOpenHashMap<V> world = getWorld(location.getWorldName(), false);
+        return world != null ? world.getOrDefault(location.getBlockKey(), defaultValue) : defaultValue;
+    }
+
+    /**
+     * Check whether or not there is a value at a location
+     *
+     * @param location the location
+     * @return <code>true</code> if there is a value; <code>false</code> if not
+     */
+    public boolean containsKey(SimpleLocation location) {
+        Long2ObjectOpenHashMap<V> world = getWorld(location.getWorldName(), false);
+        return world != null && world.containsKey(location.getBlockKey());
+    }
+
+    /**
+     * Set the value at a location
+     *
+     * @param location the location
+     * @param value    the value
+     * @return the previous value or <code>null</code> if there was none
+     */
+    public V put(SimpleLocation location, V value) {
+        return getWorld(location.getWorldName(), true).put(location.getBlockKey(), value);
+    }
+
+    /**
+     * Get the value at a location or compute and set it if there is none
+     *
+     * @param location the location
+     * @param function the function to compute the value with
+     * @return the value at the location
+     */
+    public V computeIfAbsent(SimpleLocation location, Function<SimpleLocation, V> function) {
+        Long2ObjectOpenHashMap<V> world = getWorld(location.getWorldName(), true);
+        V value = world.get(location.getBlockKey());
+        if (value == null) {
+            value = function.apply(location);
+            world.put(location.getBlockKey(), value);
+        }
+        return value;
+    }
+
+    /**
+     * Remove the value at a location
+     *
+     * @param location the location
+     * @return the removed value or <code>null</code> if there was none
+     */
+    public V remove(SimpleLocation location) {
+        Long2ObjectOpenHashMap<V> world = getWorld(location.getWorldName(), false);
+        return world != null ? world.remove(location.getBlockKey()) : null;
+    }
+
+    /**
+     * Remove the value at a location if it is the given one
+     *
+     * @param location the location
+     * @param value    the value that should be removed
+     * @return <code>true</code> if the value was removed; <code>false</code> if not
+     */
+    public boolean remove(SimpleLocation location, V value) {
+        Long2ObjectOpenHashMap<V> world = getWorld(location.getWorldName(), false);
+        return world != null && world.remove(location.getBlockKey(), value);
+    }
+
+    /**
+     * returns the amount of locations in this map
+     *
+     * @return the size of this map
+     */
+    public int size() {
+        int size = 0;
+        for (Long2ObjectOpenHashMap<V> world : worlds.values()) {
+            size += world.size();
+        }
+        return size;
+    }
+}
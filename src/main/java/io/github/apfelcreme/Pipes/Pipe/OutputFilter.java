@@ -0,0 +1,171 @@
+package io.github.apfelcreme.Pipes.Pipe;
+
+import org.bukkit.Material;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+public class OutputFilter {
+
+    private final boolean materialFilter;
+    private final boolean damageFilter;
+    private final boolean displayFilter;
+    private final boolean enchantmentFilter;
+    private final boolean dataFilter;
+
+    /**
+     * all filter items in the order of their slots
+     */
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * the filter items by their material, only used when the material filter is enabled
+     */
+    private final Map<Material, List<Entry>> byMaterial = new EnumMap<>(Material.class);
+
+    /**
+     * Compile the filter of an output
+     *
+     * @param output   the output to compile the filter for, its options decide what to compare
+     * @param contents the contents of the output's inventory
+     */
+    public OutputFilter(PipeOutput output, ItemStack[] contents) {
+        materialFilter = output.hasFlag(PipeOutput.Options.MATERIAL_FILTER);
+        damageFilter = output.hasFlag(PipeOutput.Options.DAMAGE_FILTER);
+        displayFilter = output.hasFlag(PipeOutput.Options.DISPLAY_FILTER);
+        enchantmentFilter = output.hasFlag(PipeOutput.Options.ENCHANTMENT_FILTER);
+        dataFilter = output.hasFlag(PipeOutput.Options.DATA_FILTER);
+
+        for (ItemStack item : contents) {
+            if (item != null) {
+                Entry entry = new Entry(new ItemStack(item));
+                entries.add(entry);
+                byMaterial.computeIfAbsent(item.getType(), m -> new ArrayList<>()).add(entry);
+            }
+        }
+    }
+
+    /**
+     * Check whether or not there are any filter items
+     *
+     * @return <code>true</code> if there are no filter items; <code>false</code> if there are
+     */
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Get the first filter item that matches an item
+     *
+     * @param item the item to check
+     * @return the matching filter item or <code>null</code> if none matches
+     */
+    public ItemStack getMatch(ItemStack item) {
+        if (item == null) {
+            return null;
+        }
+        List<Entry> candidates = materialFilter ? byMaterial.getOrDefault(item.getType(), Collections.emptyList()) : entries;
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        // only get the data of the item once, getItemMeta creates a copy every time
+        boolean hasMeta = item.hasItemMeta();
+        ItemMeta meta = hasMeta && (dataFilter || displayFilter) ? item.getItemMeta() : null;
+        Map<Enchantment, Integer> enchantments = enchantmentFilter ? item.getEnchantments() : null;
+
+        for (Entry entry : candidates) {
+            if (entry.matches(item, hasMeta, meta, enchantments)) {
+                return entry.item;
+            }
+        }
+        return null;
+    }
+
+    private class Entry {
+        private final ItemStack item;
+        private final Material type;
+        private final short durability;
+        private final boolean hasMeta;
+        private final ItemMeta meta;
+        private final Map<Enchantment, Integer> enchantments;
+
+        private Entry(ItemStack item) {
+            this.item = item;
+            this.type = item.getType();
+            this.durability = item.getDurability();
+            this.hasMeta = item.hasItemMeta();
+            this.meta = hasMeta ? item.getItemMeta() : null;
+            this.enchantments = item.getEnchantments();
+        }
+
+        private boolean matches(ItemStack item, boolean itemHasMeta, ItemMeta itemMeta, Map<Enchantment, Integer> itemEnchantments) {
+            if (dataFilter) {
+                if (hasMeta != itemHasMeta) {
+                    return false;
+                }
+                if (hasMeta && !meta.equals(itemMeta)) {
+                    return false;
+                }
+            }
+
+            if (materialFilter && type != item.getType()) {
+                return false;
+            }
+
+            if (damageFilter && durability != item.getDurability()) {
+                return false;
+            }
+
+            if (displayFilter) {
+                if (hasMeta != itemHasMeta) {
+                    return false;
+                }
+                if (hasMeta) {
+                    if (meta.hasDisplayName() != itemMeta.hasDisplayName()) {
+                        return false;
+                    }
+                    if (meta.hasDisplayName() && !meta.getDisplayName().equals(itemMeta.getDisplayName())) {
+                        return false;
+                    }
+                    if (meta.hasLore() != itemMeta.hasLore()) {
+                        return false;
+                    }
+                    if (meta.hasLore() && !meta.getLore().equals(itemMeta.getLore())) {
+                        return false;
+                    }
+                }
+            }
+
+            if (enchantmentFilter && !enchantments.equals(itemEnchantments)) {
+                return false;
+            }
+
+            return true;
+        }
+    }
+}
@@ -1,16 +1,18 @@
 package io.github.apfelcreme.Pipes.Pipe;
 
-import com.google.common.collect.Multimap;
-import com.google.common.collect.MultimapBuilder;
 import io.github.apfelcreme.Pipes.Exception.ChunkNotLoadedException;
 import io.github.apfelcreme.Pipes.PipesConfig;
 import io.github.apfelcreme.Pipes.PipesUtil;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
 import org.bukkit.Material;
 import org.bukkit.Particle;
 import org.bukkit.World;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
 
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -36,6 +38,11 @@ import java.util.Map;
  */
 public class Pipe {
 
+    /**
+     * the maximum amount of different items to keep routes for
+     */
+    private static final int MAX_ROUTES = 256;
+
     private final LinkedHashMap<SimpleLocation, PipeInput> inputs;
     private final LinkedHashMap<SimpleLocation, PipeOutput> outputs;
     private final LinkedHashMap<SimpleLocation, ChunkLoader> chunkLoaders;
@@ -45,6 +52,26 @@ public class Pipe {
     private int lastTransfer = 0;
     private int transfers = 0;
 
+    /**
+     * the keys of the chunks this pipe and its targets are in or <code>null</code> if they need to be calculated
+     */
+    private long[] chunks = null;
+
+    /**
+     * the keys of the chunks of this pipe that are not loaded, kept up to date by the PipeManager
+     */
+    private final LongSet unloadedChunks = new LongOpenHashSet();
+
+    /**
+     * the outputs an item can go to by the item, outputs whose filter matches come first
+     */
+    private final Map<ItemStack, LinkedHashMap<PipeOutput, PipeOutput.AcceptResult>> routes = new LinkedHashMap<ItemStack, LinkedHashMap<PipeOutput, PipeOutput.AcceptResult>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ItemStack, LinkedHashMap<PipeOutput, PipeOutput.AcceptResult>> eldest) {
+            return size() > MAX_ROUTES;
+        }
+    };
+
     public Pipe(LinkedHashMap<SimpleLocation, PipeInput> inputs, LinkedHashMap<SimpleLocation, PipeOutput> outputs,
                 LinkedHashMap<SimpleLocation, ChunkLoader> chunkLoaders, LinkedHashSet<SimpleLocation> pipeBlocks, Material type) {
         this.inputs = inputs;
@@ -197,6 +224,45 @@ public class Pipe {
                 String.valueOf(chunkLoaders.size()));
     }
 
+    /**
+     * Get the outputs of this pipe that an item could be routed to together with the result of their filters.
+     * Outputs whose filter matches the item come first. Whether or not the output is powered is not checked.
+     *
+     * @param itemStack the item to route
+     * @return the outputs and the result of their filter in the order they should be tried in
+     */
+    public LinkedHashMap<PipeOutput, PipeOutput.AcceptResult> getRoutes(ItemStack itemStack) {
+        ItemStack key = itemStack.asOne();
+        LinkedHashMap<PipeOutput, PipeOutput.AcceptResult> route = routes.get(key);
+        if (route == null) {
+            route = new LinkedHashMap<>();
+            Map<PipeOutput, PipeOutput.AcceptResult> unfiltered = new LinkedHashMap<>();
+            boolean valid = true;
+            for (PipeOutput output : outputs.values()) {
+                PipeOutput.AcceptResult result = output.matches(key);
+                valid &= result.getType() != PipeOutput.ResultType.DENY_INVALID;
+                if (result.isInFilter()) {
+                    route.put(output, result);
+                } else {
+                    unfiltered.put(output, result);
+                }
+            }
+            route.putAll(unfiltered);
+            if (valid) {
+                // don't remember routes with outputs that couldn't be read
+                routes.put(key, route);
+            }
+        }
+        return route;
+    }
+
+    /**
+     * Forget all routes, needs to be called when the outputs or their filters change
+     */
+    public void clearRoutes() {
+        routes.clear();
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -221,24 +287,71 @@ public class Pipe {
         return result;
     }
 
-    public void checkLoaded(SimpleLocation startLocation) throws ChunkNotLoadedException {
-        World world = Bukkit.getWorld(startLocation.getWorldName());
-        if (world == null) {
-            return;
+    /**
+     * Get the keys of the chunks that this pipe and the targets of its outputs are in.
+     * They only get calculated again after {@link #invalidateChunks()} was called.
+     *
+     * @return the chunk keys
+     */
+    public long[] getChunks() {
+        if (chunks == null) {
+            LongSet keys = new LongOpenHashSet();
+            for (SimpleLocation location : pipeBlocks) {
+                keys.add(Chunk.getChunkKey(location.getX() >> 4, location.getZ() >> 4));
+            }
+            for (SimpleLocation location : inputs.keySet()) {
+                keys.add(Chunk.getChunkKey(location.getX() >> 4, location.getZ() >> 4));
+            }
+            for (PipeOutput output : outputs.values()) {
+                keys.add(Chunk.getChunkKey(output.getLocation().getX() >> 4, output.getLocation().getZ() >> 4));
+                keys.add(Chunk.getChunkKey(output.getTargetLocation().getX() >> 4, output.getTargetLocation().getZ() >> 4));
+            }
+            chunks = keys.toLongArray();
         }
+        return chunks;
+    }
 
-        Multimap<Integer, Integer> chunks = MultimapBuilder.hashKeys().hashSetValues().build();
-        LinkedHashSet<SimpleLocation> locations = new LinkedHashSet<>(pipeBlocks);
-        locations.addAll(inputs.keySet());
-        locations.addAll(outputs.keySet());
-        outputs.values().stream().map(PipeOutput::getTargetLocation).forEach(locations::add);
-        for (SimpleLocation location : locations) {
-            chunks.put(location.getX() >> 4, location.getZ() >> 4);
+    /**
+     * Forget the chunks of this pipe after blocks or parts were added or removed
+     */
+    public void invalidateChunks() {
+        chunks = null;
+        unloadedChunks.clear();
+    }
+
+    /**
+     * Set whether or not a chunk of this pipe is loaded
+     *
+     * @param chunkKey the key of the chunk
+     * @param loaded   whether or not the chunk is loaded
+     */
+    public void setChunkLoaded(long chunkKey, boolean loaded) {
+        if (loaded) {
+            unloadedChunks.remove(chunkKey);
+        } else {
+            unloadedChunks.add(chunkKey);
         }
-        for (Map.Entry<Integer, Integer> chunk : chunks.entries()) {
-            if (!world.isChunkLoaded(chunk.getKey(), chunk.getValue())) {
-                throw new ChunkNotLoadedException(startLocation);
-            }
+    }
+
+    /**
+     * Get the name of the world this pipe is in
+     *
+     * @return the world name
+     */
+    public String getWorldName() {
+        return pipeBlocks.iterator().next().getWorldName();
+    }
+
+    /**
+     * Check whether or not all chunks this pipe and the targets of its outputs are in are loaded
+     *
+     * @param startLocation the location the pipe was accessed from
+     * @throws ChunkNotLoadedException with a location in the first chunk that is not loaded
+     */
+    public void checkLoaded(SimpleLocation startLocation) throws ChunkNotLoadedException {
+        if (!unloadedChunks.isEmpty()) {
+            long chunkKey = unloadedChunks.iterator().nextLong();
+            throw new ChunkNotLoadedException(new SimpleLocation(startLocation.getWorldName(), (int) chunkKey << 4, 0, (int) (chunkKey >> 32) << 4));
         }
     }
 }
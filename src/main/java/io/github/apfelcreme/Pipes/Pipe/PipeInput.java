@@ -1,7 +1,9 @@
 package io.github.apfelcreme.Pipes.Pipe;
 
+import io.github.apfelcreme.Pipes.PipesConfig;
 import io.github.apfelcreme.Pipes.PipesItem;
 import org.bukkit.block.BlockFace;
+import org.bukkit.command.CommandSender;
 import org.bukkit.block.BlockState;
 import org.bukkit.material.Directional;
 
@@ -64,6 +66,15 @@ public class PipeInput extends AbstractPipePart {
         return Options.get(name);
     }
 
+    @Override
+    public boolean canSet(CommandSender sender, Option<?> option, Value<?> value) {
+        if (option == Options.SPEED && value.getValue() != Options.Speed.DEFAULT) {
+            Options.Speed speed = (Options.Speed) value.getValue();
+            return PipesConfig.isSpeedAllowed(speed) && sender.hasPermission("Pipes.speed." + speed.name().toLowerCase());
+        }
+        return super.canSet(sender, option, value);
+    }
+
     @Override
     public boolean equals(Object o) {
         return this == o
@@ -102,8 +113,19 @@ public class PipeInput extends AbstractPipePart {
          * Whether to merge item stacks in the input after a transfer attempt or not
          */
         public static final Option<Boolean> MERGE = add(new Option<>("MERGE", Value.TRUE, Value.FALSE));
+        /**
+         * How often this input transfers its items
+         * <p><strong>Possible Values:</strong></p>
+         * <ul>
+         * <li><code>DEFAULT</code> transfer every transferCooldown ticks from the config</li>
+         * <li><code>VERY_FAST</code> to <code>VERY_SLOW</code> transfer every 2, 5, 10, 20 or 40 ticks</li>
+         * </ul>
+         */
+        public static final Option<Speed> SPEED = add(new Option<>("SPEED", new Value<>(Speed.DEFAULT),
+                new Value<>(Speed.VERY_FAST), new Value<>(Speed.FAST), new Value<>(Speed.MEDIUM), new Value<>(Speed.SLOW), new Value<>(Speed.VERY_SLOW)));
 
         protected static <T> Option<T> add(Option<T> option) {
+            option.setIndex(VALUES.size());
             VALUES.put(option.name().toLowerCase(), option);
             return option;
         }
@@ -119,5 +141,30 @@ public class PipeInput extends AbstractPipePart {
         public static Option<?>[] values() {
             return VALUES.values().toArray(new Option<?>[0]);
         }
+
+        public enum Speed {
+            DEFAULT(0),
+            VERY_FAST(2),
+            FAST(5),
+            MEDIUM(10),
+            SLOW(20),
+            VERY_SLOW(40);
+
+            private final int ticks;
+
+            Speed(int ticks) {
+                this.ticks = ticks;
+            }
+
+            /**
+             * Get the number of ticks between two transfers of an input with this speed. Speeds that
+             * aren't allowed in the config use the default speed.
+             *
+             * @return the number of ticks, at least 1
+             */
+            public int getTicks() {
+                return ticks > 0 && PipesConfig.isSpeedAllowed(this) ? ticks : (int) Math.max(PipesConfig.getTransferCooldown(), 1);
+            }
+        }
     }
 }
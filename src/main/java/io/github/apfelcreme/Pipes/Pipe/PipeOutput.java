@@ -1,10 +1,14 @@
 package io.github.apfelcreme.Pipes.Pipe;
 
+import io.github.apfelcreme.Pipes.Jfr.OutputAcceptEvent;
+import io.github.apfelcreme.Pipes.Manager.ItemMoveScheduler;
+import io.github.apfelcreme.Pipes.Manager.PipeManager;
 import io.github.apfelcreme.Pipes.PipesItem;
 import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
 import org.bukkit.block.BlockState;
+import org.bukkit.block.Container;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.minecart.HopperMinecart;
 import org.bukkit.entity.minecart.StorageMinecart;
@@ -48,6 +52,8 @@ public class PipeOutput extends AbstractPipePart {
 
     private final BlockFace facing;
 
+    private OutputFilter filter;
+
     public PipeOutput(BlockState state) {
         super(PipesItem.PIPE_OUTPUT, state.getLocation());
         this.facing = ((Directional) state.getData()).getFacing();
@@ -118,39 +124,115 @@ public class PipeOutput extends AbstractPipePart {
      * @return  A result that represents why or why not the item is accepted by this output
      */
     public AcceptResult accepts(PipeInput input, ItemStack itemStack) {
+        return accepts(input, matches(itemStack));
+    }
+
+    /**
+     * Check whether or not this output can accept an item that was already checked against the filter
+     *
+     * @param input     The input that tries to move the item
+     * @param match     The result of {@link #matches(ItemStack)} for the item
+     * @return  A result that represents why or why not the item is accepted by this output
+     */
+    public AcceptResult accepts(PipeInput input, AcceptResult match) {
         Block block = getLocation().getBlock();
-        BlockState state = block != null ? block.getState(false) : null;
-        if (state == null || !(state instanceof InventoryHolder)) {
+        boolean valid = block != null && block.getType() == getType().getMaterial();
+        return accepts(input, match, valid, valid && block.isBlockPowered());
+    }
+
+    /**
+     * Check whether or not this output can accept an item with an already known block state
+     *
+     * @param input     The input that tries to move the item
+     * @param match     The result of {@link #matches(ItemStack)} for the item
+     * @param valid     Whether or not the output block still exists
+     * @param powered   Whether or not the output block is powered
+     * @return  A result that represents why or why not the item is accepted by this output
+     */
+    public AcceptResult accepts(PipeInput input, AcceptResult match, boolean valid, boolean powered) {
+        OutputAcceptEvent event = OutputAcceptEvent.start(this);
+        AcceptResult result = checkAccepts(input, match, valid, powered);
+        if (event != null) {
+            event.finish(result);
+        }
+        return result;
+    }
+
+    private AcceptResult checkAccepts(PipeInput input, AcceptResult match, boolean valid, boolean powered) {
+        if (!valid || match.getType() == ResultType.DENY_INVALID) {
             return new AcceptResult(ResultType.DENY_INVALID, null);
         }
         Options.Overflow outputOverflow = getOption(Options.OVERFLOW);
-        if ((outputOverflow == Options.Overflow.TRUE || outputOverflow == Options.Overflow.INPUT && input.getOption(PipeInput.Options.OVERFLOW))
-                && block.isBlockPowered()) {
+        if ((outputOverflow == Options.Overflow.TRUE || outputOverflow == Options.Overflow.INPUT && input.hasFlag(PipeInput.Options.OVERFLOW))
+                && powered) {
             return new AcceptResult(ResultType.DENY_REDSTONE, null);
         }
 
-        ItemStack filter = null;
-        boolean isEmpty = true;
-        boolean isWhitelist = getOption(Options.WHITELIST);
-        for (ItemStack filterItem : ((InventoryHolder) state).getInventory().getContents()) {
-            isEmpty &= filterItem == null;
-            if (matchesFilter(filterItem, itemStack)) {
-                if (isWhitelist) {
-                    filter = filterItem;
-                    break;
-                } else {
-                    return new AcceptResult(ResultType.DENY_BLACKLIST, filterItem);
-                }
-            }
+        if (match.getType() == ResultType.DENY_BLACKLIST) {
+            return match;
+        } else if (powered) {
+            return new AcceptResult(ResultType.DENY_REDSTONE, match.getFilterItem());
+        }
+        return match;
+    }
+
+    /**
+     * Check an item stack against the filter of this output without checking the state of the block
+     *
+     * @param itemStack The item to check
+     * @return  A result that is either ACCEPT, DENY_WHITELIST, DENY_BLACKLIST or DENY_INVALID if the filter couldn't be read
+     */
+    public AcceptResult matches(ItemStack itemStack) {
+        OutputFilter filter = getFilter();
+        if (filter == null) {
+            return new AcceptResult(ResultType.DENY_INVALID, null);
         }
 
-        if (block.isBlockPowered()) {
-            return new AcceptResult(ResultType.DENY_REDSTONE, filter);
-        } else if (!isEmpty && isWhitelist && filter == null) {
+        ItemStack filterItem = filter.getMatch(itemStack);
+        boolean isWhitelist = hasFlag(Options.WHITELIST);
+        if (filterItem != null && !isWhitelist) {
+            return new AcceptResult(ResultType.DENY_BLACKLIST, filterItem);
+        } else if (!filter.isEmpty() && isWhitelist && filterItem == null) {
             return new AcceptResult(ResultType.DENY_WHITELIST, null);
-        } else {
-            return new AcceptResult(ResultType.ACCEPT, filter);
         }
+        return new AcceptResult(ResultType.ACCEPT, filterItem);
+    }
+
+    /**
+     * Get the compiled filter of this output. It gets created from the contents of the output
+     * the first time it's needed after it was invalidated.
+     *
+     * @return the filter or <code>null</code> if the output's inventory couldn't be found
+     */
+    public OutputFilter getFilter() {
+        if (filter == null) {
+            Container holder = getHolder();
+            if (holder == null) {
+                return null;
+            }
+            filter = new OutputFilter(this, holder.getInventory().getContents());
+        }
+        return filter;
+    }
+
+    /**
+     * Invalidate the compiled filter, needs to be called when the contents of the output change
+     */
+    public void invalidateFilter() {
+        if (filter != null) {
+            filter = null;
+            // routes can only exist if the filter was compiled
+            for (Pipe pipe : PipeManager.getInstance().getPipesSafe(getLocation(), true)) {
+                pipe.clearRoutes();
+            }
+        }
+        // inputs that waited because of the old filter might be able to move items now
+        ItemMoveScheduler.getInstance().wake(getLocation());
+    }
+
+    @Override
+    protected void onOptionChange(Option<?> option) {
+        invalidateFilter();
     }
 
     /**
@@ -164,7 +246,7 @@ public class PipeOutput extends AbstractPipePart {
             return false;
         }
 
-        if (getOption(Options.DATA_FILTER)) {
+        if (hasFlag(Options.DATA_FILTER)) {
             if (filter.hasItemMeta() != item.hasItemMeta()) {
                 return false;
             }
@@ -173,19 +255,19 @@ public class PipeOutput extends AbstractPipePart {
             }
         }
 
-        if (getOption(Options.MATERIAL_FILTER)) {
+        if (hasFlag(Options.MATERIAL_FILTER)) {
             if (filter.getType() != item.getType()) {
                 return false;
             }
         }
 
-        if (getOption(Options.DAMAGE_FILTER)) {
+        if (hasFlag(Options.DAMAGE_FILTER)) {
             if (filter.getDurability() != item.getDurability()) {
                 return false;
             }
         }
 
-        if (getOption(Options.DISPLAY_FILTER)) {
+        if (hasFlag(Options.DISPLAY_FILTER)) {
             if (filter.hasItemMeta() != item.hasItemMeta()) {
                 return false;
             }
@@ -207,7 +289,7 @@ public class PipeOutput extends AbstractPipePart {
             }
         }
 
-        if (getOption(Options.ENCHANTMENT_FILTER)) {
+        if (hasFlag(Options.ENCHANTMENT_FILTER)) {
             if (!filter.getEnchantments().equals(item.getEnchantments())) {
                 return false;
             }
@@ -350,6 +432,7 @@ public class PipeOutput extends AbstractPipePart {
         public static final Option<Boolean> DROP = add(new Option<>("DROP", Option.GuiPosition.LEFT, Value.FALSE, Value.TRUE));
 
         protected static <T> Option<T> add(Option<T> option) {
+            option.setIndex(VALUES.size());
             VALUES.put(option.name().toLowerCase(), option);
             return option;
         }
@@ -33,26 +33,40 @@ public class SimpleLocation {
     private final int x;
     private final int y;
     private final int z;
+    private final long blockKey;
+    private final int hash;
 
     public SimpleLocation(String worldName, int x, int y, int z) {
         this.worldName = worldName;
         this.x = x;
         this.y = y;
         this.z = z;
+        this.blockKey = Block.getBlockKey(x, y, z);
+
+        int hash = 42;
+        hash = 31 * hash + worldName.hashCode();
+        hash = 23 * hash + x;
+        hash = 23 * hash + y;
+        hash = 23 * hash + z;
+        this.hash = hash;
     }
 
     public SimpleLocation(Location location) {
-        this.worldName = location.getWorld().getName();
-        this.x = location.getBlockX();
-        this.y = location.getBlockY();
-        this.z = location.getBlockZ();
+        this(location.getWorld().getName(), location.getBlockX(), location.getBlockY(), location.getBlockZ());
     }
 
     public SimpleLocation(SimpleLocation location) {
-        this.worldName = location.getWorldName();
-        this.x = location.getX();
-        this.y = location.getY();
-        this.z = location.getZ();
+        this(location.getWorldName(), location.getX(), location.getY(), location.getZ());
+    }
+
+    /**
+     * Create a location from a packed block key
+     *
+     * @param worldName the world name
+     * @param blockKey  the packed coordinates, see {@link Block#getBlockKey(int, int, int)}
+     */
+    public SimpleLocation(String worldName, long blockKey) {
+        this(worldName, Block.getBlockKeyX(blockKey), Block.getBlockKeyY(blockKey), Block.getBlockKeyZ(blockKey));
     }
 
     /**
@@ -93,6 +107,29 @@ public class SimpleLocation {
         return z;
     }
 
+    /**
+     * returns the coordinates packed into a single long
+     *
+     * @return the packed block key
+     */
+    public long getBlockKey() {
+        return blockKey;
+    }
+
+    /**
+     * returns the packed key of the block next to a packed block key
+     *
+     * @param blockKey the packed block key
+     * @param face     a direction
+     * @return the packed key of the block that faces the block to the given side
+     */
+    public static long getRelative(long blockKey, BlockFace face) {
+        return Block.getBlockKey(
+                Block.getBlockKeyX(blockKey) + face.getModX(),
+                Block.getBlockKeyY(blockKey) + face.getModY(),
+                Block.getBlockKeyZ(blockKey) + face.getModZ());
+    }
+
     /**
      * returns the location that faces the block location to the given side
      *
@@ -151,22 +188,14 @@ public class SimpleLocation {
 
         SimpleLocation that = (SimpleLocation) o;
 
-        if (x != that.x) return false;
-        if (y != that.y) return false;
-        if (z != that.z) return false;
+        if (hash != that.hash) return false;
+        if (blockKey != that.blockKey) return false;
         return worldName.equals(that.worldName);
     }
 
     @Override
     public int hashCode() {
-        int hash = 42;
-
-        hash = 31 * hash + worldName.hashCode();
-        hash = 23 * hash + x;
-        hash = 23 * hash + y;
-        hash = 23 * hash + z;
         return hash;
-
     }
 
     @Override
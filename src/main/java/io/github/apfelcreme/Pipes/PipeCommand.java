@@ -49,6 +49,9 @@ public class PipeCommand implements CommandExecutor {
                     case RELOAD:
                         subCommand = new ReloadCommand();
                         break;
+                    case STATS:
+                        subCommand = new StatsCommand();
+                        break;
                     case TP:
                         subCommand = new TpCommand();
                         break;
@@ -75,6 +78,7 @@ public class PipeCommand implements CommandExecutor {
         INFO,
         MONITOR,
         RELOAD,
+        STATS,
         TP;
 
         /**
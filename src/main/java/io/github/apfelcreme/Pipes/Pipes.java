@@ -8,7 +8,13 @@ import io.github.apfelcreme.Pipes.Listener.BlockListener;
 import io.github.apfelcreme.Pipes.Listener.ConvertListener;
 import io.github.apfelcreme.Pipes.Listener.InventoryChangeListener;
 import io.github.apfelcreme.Pipes.Listener.PlayerListener;
+import io.github.apfelcreme.Pipes.Listener.TickListener;
+import io.github.apfelcreme.Pipes.Listener.WorldListener;
+import io.github.apfelcreme.Pipes.Manager.ChunkTicketManager;
 import io.github.apfelcreme.Pipes.Manager.ItemMoveScheduler;
+import io.github.apfelcreme.Pipes.Manager.PartIndex;
+import io.github.apfelcreme.Pipes.Manager.PartSaveQueue;
+import io.github.apfelcreme.Pipes.Manager.PipeIndex;
 import net.md_5.bungee.api.ChatMessageType;
 import net.md_5.bungee.api.chat.TextComponent;
 import org.bukkit.Material;
@@ -69,9 +75,13 @@ public class Pipes extends JavaPlugin {
         registeredRightClicks = CacheBuilder.newBuilder().expireAfterWrite(10, TimeUnit.SECONDS).build();
         PipesConfig.load();
         ItemMoveScheduler.load();
+        PipeIndex.load();
+        PartIndex.load();
         getServer().getPluginManager().registerEvents(new InventoryChangeListener(this), this);
         getServer().getPluginManager().registerEvents(new PlayerListener(this), this);
         getServer().getPluginManager().registerEvents(new BlockListener(this), this);
+        getServer().getPluginManager().registerEvents(new WorldListener(this), this);
+        getServer().getPluginManager().registerEvents(new TickListener(this), this);
         if (getConfig().getBoolean("convertToBlockInfoOnChunkLoad")) {
             getServer().getPluginManager().registerEvents(new ConvertListener(this), this);
         }
@@ -111,7 +121,10 @@ public class Pipes extends JavaPlugin {
 
     @Override
     public void onDisable() {
+        PartSaveQueue.exit();
         ItemMoveScheduler.exit();
+        PipeIndex.exit();
+        ChunkTicketManager.exit();
     }
 
     /**
@@ -2,6 +2,7 @@ package io.github.apfelcreme.Pipes;
 
 import de.themoep.utils.lang.LanguageConfig;
 import de.themoep.utils.lang.bukkit.LanguageManager;
+import io.github.apfelcreme.Pipes.Pipe.PipeInput;
 import org.bukkit.ChatColor;
 import org.bukkit.Material;
 import org.bukkit.command.CommandSender;
@@ -9,8 +10,10 @@ import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 
 /*
@@ -37,6 +40,14 @@ public class PipesConfig {
 
     private static Pipes plugin;
     private static long transferCooldown;
+    private static long transferTimeBudget;
+    private static boolean staggerTransfers;
+    private static int blockedBackoffMax;
+    private static Set<PipeInput.Options.Speed> allowedSpeeds;
+    private static int chunkTicketTimeout;
+    private static int metricsWindow;
+    private static boolean jfrEvents;
+    private static int detectionSize;
     private static int transferCount;
     private static double inputToOutputRatio;
     private static int maxPipeOutputs;
@@ -57,6 +68,25 @@ public class PipesConfig {
         plugin.saveDefaultConfig();
         plugin.reloadConfig();
         transferCooldown = plugin.getConfig().getLong("transferCooldown");
+        transferTimeBudget = plugin.getConfig().getLong("transferTimeBudget");
+        staggerTransfers = plugin.getConfig().getBoolean("staggerTransfers");
+        blockedBackoffMax = plugin.getConfig().getInt("blockedBackoffMax");
+        allowedSpeeds = EnumSet.of(PipeInput.Options.Speed.DEFAULT);
+        if (plugin.getConfig().isList("allowedSpeeds")) {
+            for (String speed : plugin.getConfig().getStringList("allowedSpeeds")) {
+                try {
+                    allowedSpeeds.add(PipeInput.Options.Speed.valueOf(speed.toUpperCase()));
+                } catch (IllegalArgumentException e) {
+                    plugin.getLogger().log(Level.WARNING, "Unknown speed " + speed + " in allowedSpeeds!");
+                }
+            }
+        } else {
+            allowedSpeeds = EnumSet.allOf(PipeInput.Options.Speed.class);
+        }
+        chunkTicketTimeout = plugin.getConfig().getInt("chunkTicketTimeout");
+        metricsWindow = plugin.getConfig().getInt("metricsWindow", 60);
+        jfrEvents = plugin.getConfig().getBoolean("jfrEvents");
+        detectionSize = plugin.getConfig().getInt("detectionSize", 1000);
         transferCount = plugin.getConfig().getInt("transferCount");
         inputToOutputRatio = plugin.getConfig().getDouble("inputToOutputRatio");
         maxPipeOutputs = plugin.getConfig().getInt("maxPipeOutputs");
@@ -104,6 +134,79 @@ public class PipesConfig {
         return transferCooldown;
     }
 
+    /**
+     * returns the time in nanoseconds that transfers may take per tick, 0 to run all transfers at once
+     *
+     * @return the transfer time budget per tick in ns
+     */
+    public static long getTransferTimeBudget() {
+        return transferTimeBudget;
+    }
+
+    /**
+     * returns whether or not the inputs should be spread over all ticks of the transfer cooldown
+     *
+     * @return whether or not transfers are staggered
+     */
+    public static boolean isStaggerTransfers() {
+        return staggerTransfers;
+    }
+
+    /**
+     * returns the max amount of ticks to wait before retrying an input whose targets are full, 0 to not wait
+     *
+     * @return the max backoff of blocked inputs in ticks
+     */
+    public static int getBlockedBackoffMax() {
+        return blockedBackoffMax;
+    }
+
+    /**
+     * returns whether or not inputs may use a speed, the default speed is always allowed
+     *
+     * @param speed the speed
+     * @return whether or not the speed is in the allowed speeds
+     */
+    public static boolean isSpeedAllowed(PipeInput.Options.Speed speed) {
+        return allowedSpeeds.contains(speed);
+    }
+
+    /**
+     * returns the amount of ticks that chunks loaded for pipes with chunk loaders stay loaded after their last transfer
+     *
+     * @return the chunk ticket timeout in ticks
+     */
+    public static int getChunkTicketTimeout() {
+        return chunkTicketTimeout;
+    }
+
+    /**
+     * returns the length of a window of the transfer metrics
+     *
+     * @return the metrics window in seconds
+     */
+    public static int getMetricsWindow() {
+        return metricsWindow;
+    }
+
+    /**
+     * returns whether or not JFR events should be emitted
+     *
+     * @return <code>true</code> if events are enabled
+     */
+    public static boolean isJfrEvents() {
+        return jfrEvents;
+    }
+
+    /**
+     * returns the number of inputs whose transfers are counted for detections
+     *
+     * @return the detection size
+     */
+    public static int getDetectionSize() {
+        return detectionSize;
+    }
+
     /**
      * returns the max amount of item stacks transfered per pipe transfer
      *